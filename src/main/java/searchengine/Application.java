@@ -7,7 +7,23 @@ import org.springframework.scheduling.annotation.EnableAsync;
 @SpringBootApplication
 @EnableAsync  // Включаем поддержку асинхронных методов
 public class Application {
+    // Пул соединений JDK HttpClient общий для всей JVM и читает свои параметры один раз, при первой загрузке.
+    // Поэтому они задаются здесь, до запуска контекста, а не в настройках crawler.http:
+    //   jdk.httpclient.keepalive.timeout  — сколько секунд простаивающее соединение остаётся в пуле (по умолчанию 60)
+    //   jdk.httpclient.connectionPoolSize — предельный размер пула простаивающих соединений (0 — без ограничения)
+    // Значения, переданные при запуске через -D, не переопределяются.
+    private static final String KEEP_ALIVE_TIMEOUT = "jdk.httpclient.keepalive.timeout";
+    private static final String CONNECTION_POOL_SIZE = "jdk.httpclient.connectionPoolSize";
+
     public static void main(String[] args) {
+        setPropertyIfAbsent(KEEP_ALIVE_TIMEOUT, "60");
+        setPropertyIfAbsent(CONNECTION_POOL_SIZE, "0");
         SpringApplication.run(Application.class, args);
     }
+
+    private static void setPropertyIfAbsent(String key, String value) {
+        if (System.getProperty(key) == null) {
+            System.setProperty(key, value);
+        }
+    }
 }
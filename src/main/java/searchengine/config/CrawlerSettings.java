@@ -0,0 +1,117 @@
+package searchengine.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "crawler")
+public class CrawlerSettings {
+    // Количество потоков, выполняющих сетевые запросы; запросы, ожидающие слота хоста, потоков не занимают
+    private int fetchThreads = 16;
+    private Politeness politeness = new Politeness();
+    private Http http = new Http();
+    private Frontier frontier = new Frontier();
+    private Visited visited = new Visited();
+    private Pipeline pipeline = new Pipeline();
+    private IndexWriter indexWriter = new IndexWriter();
+    private LemmaFrequency lemmaFrequency = new LemmaFrequency();
+    private Purge purge = new Purge();
+    private MorphCache morphCache = new MorphCache();
+
+    @Getter
+    @Setter
+    public static class Politeness {
+        // Минимальный интервал между запросами к одному хосту
+        private long minIntervalMs = 500;
+        // Максимальное число одновременных запросов к одному хосту
+        private int maxInFlightPerHost = 2;
+        // Ёмкость корзины токенов: сколько запросов можно выпустить подряд без ожидания
+        private int burst = 1;
+    }
+
+    @Getter
+    @Setter
+    public static class Http {
+        private long connectTimeoutMs = 5000;
+        private long requestTimeoutMs = 10000;
+        // Разрешить HTTP/2: запросы к одному хосту мультиплексируются в одном соединении
+        private boolean http2 = true;
+    }
+
+    @Getter
+    @Setter
+    public static class Frontier {
+        // Максимальное число адресов в очереди обхода в памяти; остальные временно пишутся на диск в journal-dir
+        private int capacity = 100_000;
+        // Каталог журналов очереди обхода, из которых можно продолжить прерванную индексацию
+        private String journalDir = "crawl-state";
+        private long checkpointIntervalSeconds = 10;
+        // Число записей в журнале, после которого он сжимается при очередном сохранении
+        private int compactThreshold = 50_000;
+    }
+
+    public enum VisitedMode {
+        // точное множество 64-битных отпечатков
+        EXACT,
+        // фильтр Блума фиксированного размера
+        BLOOM
+    }
+
+    @Getter
+    @Setter
+    public static class Visited {
+        private VisitedMode mode = VisitedMode.EXACT;
+        // Параметры фильтра Блума: ожидаемое число адресов на сайт и доля ложных срабатываний
+        private long expectedUrls = 10_000_000;
+        private double falsePositiveRate = 0.001;
+    }
+
+    @Getter
+    @Setter
+    public static class Pipeline {
+        // Потоки стадий конвейера после загрузки: разбор HTML, лемматизация, запись в базу
+        private int parseThreads = 2;
+        private int lemmatizeThreads = 4;
+        private int persistThreads = 2;
+        // Сколько запросов может ожидать слота хоста или выполняться одновременно
+        private int maxPendingFetches = 1_024;
+        // Ёмкость очереди перед каждой стадией
+        private int queueCapacity = 256;
+        // Период вывода статистики стадий в журнал (0 — только по завершении)
+        private long metricsIntervalSeconds = 30;
+    }
+
+    @Getter
+    @Setter
+    public static class IndexWriter {
+        // Строки index_table пишутся пачкой, когда их набирается batch-rows или проходит flush-interval-ms
+        private int batchRows = 5_000;
+        private long flushIntervalMs = 1_000;
+    }
+
+    @Getter
+    @Setter
+    public static class LemmaFrequency {
+        // Прирост частоты лемм пишется в базу раз в flush-interval-ms или каждые flush-pages страниц
+        private long flushIntervalMs = 1_000;
+        private int flushPages = 200;
+    }
+
+    @Getter
+    @Setter
+    public static class Purge {
+        // Сколько id удаляется одним запросом при удалении сайта перед переиндексацией
+        private int chunkSize = 500;
+    }
+
+    @Getter
+    @Setter
+    public static class MorphCache {
+        // Предельное число словоформ в кэше морфологии, общем для индексации и поиска
+        private int maxEntries = 100_000;
+    }
+}
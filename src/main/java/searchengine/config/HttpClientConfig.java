@@ -0,0 +1,34 @@
+package searchengine.config;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.net.http.HttpClient;
+import java.time.Duration;
+
+// Общий HTTP-клиент краулера: соединения переиспользуются между запросами (keep-alive, HTTP/2).
+// Число соединений к одному хосту ограничивается планировщиком crawler.politeness.max-in-flight-per-host.
+// Параметры пула keep-alive — системные свойства JVM, они задаются в Application.main.
+@Slf4j
+@Configuration
+@RequiredArgsConstructor
+public class HttpClientConfig {
+
+    private final CrawlerSettings crawlerSettings;
+
+    @Bean
+    public HttpClient crawlerHttpClient() {
+        CrawlerSettings.Http http = crawlerSettings.getHttp();
+
+        log.info("Создание HTTP-клиента краулера: HTTP/2 {}, keep-alive {} с",
+                http.isHttp2() ? "включён" : "выключен", System.getProperty("jdk.httpclient.keepalive.timeout"));
+
+        return HttpClient.newBuilder()
+                .version(http.isHttp2() ? HttpClient.Version.HTTP_2 : HttpClient.Version.HTTP_1_1)
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .connectTimeout(Duration.ofMillis(http.getConnectTimeoutMs()))
+                .build();
+    }
+}
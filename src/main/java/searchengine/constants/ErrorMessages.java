@@ -10,7 +10,9 @@ public interface ErrorMessages {
     String UNKNOWN_ERROR = "Неизвестная ошибка";
     String ERROR_LOAD_CHILD_PAGE = "Ссылка не доступна";
     String ERROR_SAVE_PAGE_TO_DATABASE = "Ошибка сохранения страницы";
+    String ERROR_SAVE_INDEX = "Ошибка сохранения индекса, не записано строк: ";
     String EMPTY_QUERY = "Задан пустой поисковый запрос";
+    String INDEXING_STOPPED = "Индексация остановлена пользователем";
     String INDEXING_ERROR = "Ошибка в процессе индексации";
     String ERROR_START_INDEXING = "Ошибка при запуске индексации";
     String FAILED_TO_LOAD_HTML = "Не удалось загрузить HTML-документ для сайта: ";
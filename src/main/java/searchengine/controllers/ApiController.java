@@ -28,8 +28,9 @@ public class ApiController {
     }
 
     @GetMapping("/startIndexing")
-    public ResponseEntity<ApiResponse> startIndexing() {
-        if (!indexingService.startIndexing()) {
+    public ResponseEntity<ApiResponse> startIndexing(
+            @RequestParam(value = "resume", defaultValue = "false") boolean resume) {
+        if (!indexingService.startIndexing(resume)) {
             ApiResponse response = new ApiResponse(false, ErrorMessages.INDEXING_ALREADY_RUNNING);
             return ResponseEntity.badRequest().body(response);
         }
@@ -58,9 +59,9 @@ public class ApiController {
     @GetMapping("/search")
     public ResponseEntity<SearchResponse> search(
             @RequestParam(value = "query", required = false) String query,
-            @RequestParam(value = "site", required = false) String site) {
-
-        int currentLimit = 0;
+            @RequestParam(value = "site", required = false) String site,
+            @RequestParam(value = "offset", defaultValue = "0") int offset,
+            @RequestParam(value = "limit", defaultValue = "0") int limit) {
 
         if (query == null || query.isBlank()) {
             SearchResponse response = new SearchResponse(
@@ -71,8 +72,7 @@ public class ApiController {
         if (site != null && site.isBlank()) {
             site = null;
         }
-        int currentOffset = 0;
-        SearchResponse searchResponse = searchService.search(query, site, currentOffset, currentLimit);
+        SearchResponse searchResponse = searchService.search(query, site, offset, limit);
 
         return ResponseEntity.ok(searchResponse);
     }
@@ -0,0 +1,26 @@
+package searchengine.dto.indexing;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.jsoup.nodes.Document;
+
+import java.util.List;
+import java.util.Map;
+
+// Результат одного HTTP-запроса: код ответа, заголовки, итоговый URL и тело страницы
+@Getter
+@AllArgsConstructor
+public class FetchResult {
+    private final int statusCode;
+    private final Map<String, List<String>> headers;
+    private final String finalUrl;
+    private final Document document;
+
+    public boolean isSuccessful() {
+        return statusCode >= 200 && statusCode < 300 && document != null;
+    }
+
+    public String getBody() {
+        return document != null ? document.html() : "";
+    }
+}
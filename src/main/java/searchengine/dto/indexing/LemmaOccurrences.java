@@ -0,0 +1,48 @@
+package searchengine.dto.indexing;
+
+import java.util.Arrays;
+
+// Вхождения одной леммы в текст страницы: порядковые номера слов и смещения их начала в символах.
+// Номера слов возрастают, поэтому в базе они хранятся разностями (см. PositionCodec).
+public class LemmaOccurrences {
+    private static final int INITIAL_CAPACITY = 4;
+
+    private int[] positions;
+    private int[] offsets;
+    private int count;
+
+    public LemmaOccurrences() {
+        this(INITIAL_CAPACITY);
+    }
+
+    public LemmaOccurrences(int capacity) {
+        positions = new int[Math.max(1, capacity)];
+        offsets = new int[Math.max(1, capacity)];
+    }
+
+    // Одно слово может дать лемму несколько раз (разные морфологические разборы) — учитывается один раз
+    public void add(int position, int offset) {
+        if (count > 0 && positions[count - 1] == position) {
+            return;
+        }
+        if (count == positions.length) {
+            positions = Arrays.copyOf(positions, count * 2);
+            offsets = Arrays.copyOf(offsets, count * 2);
+        }
+        positions[count] = position;
+        offsets[count] = offset;
+        count++;
+    }
+
+    public int count() {
+        return count;
+    }
+
+    public int positionAt(int index) {
+        return positions[index];
+    }
+
+    public int offsetAt(int index) {
+        return offsets[index];
+    }
+}
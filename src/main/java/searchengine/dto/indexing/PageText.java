@@ -0,0 +1,30 @@
+package searchengine.dto.indexing;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+
+// Заголовок и видимый текст страницы. Извлекаются из HTML один раз при индексации
+// и сохраняются вместе со страницей, чтобы поиск не разбирал HTML на каждый запрос.
+@Getter
+@AllArgsConstructor
+public class PageText {
+    public static final int MAX_TITLE_LENGTH = 500;
+
+    private final String title;
+    private final String text;
+
+    // Текст документа уже нормализован Jsoup: сущности раскрыты, пробелы схлопнуты
+    public static PageText from(Document document) {
+        String title = document.title().trim();
+        if (title.length() > MAX_TITLE_LENGTH) {
+            title = title.substring(0, MAX_TITLE_LENGTH);
+        }
+        return new PageText(title, document.text());
+    }
+
+    public static PageText fromHtml(String html) {
+        return from(Jsoup.parse(html));
+    }
+}
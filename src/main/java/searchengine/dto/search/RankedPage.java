@@ -0,0 +1,14 @@
+package searchengine.dto.search;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+// Страница, найденная агрегирующим запросом: id, путь и абсолютная релевантность —
+// сумма рангов лемм запроса на странице
+@Getter
+@AllArgsConstructor
+public class RankedPage {
+    private final Integer pageId;
+    private final String path;
+    private final Double relevance;
+}
@@ -0,0 +1,27 @@
+package searchengine.dto.search;
+
+import lombok.Getter;
+import searchengine.model.SiteEntity;
+
+import java.util.Set;
+
+// Параметры одного поискового запроса. Создаётся в начале запроса и передаётся через все этапы
+// (поиск страниц, ранжирование, сниппеты); сервис поиска не хранит состояния запроса в своих полях,
+// поэтому одновременные запросы из разных потоков не мешают друг другу.
+@Getter
+public class SearchContext {
+    private final String query;
+    private final Set<String> lemmas;
+    // null — поиск по всем сайтам
+    private final SiteEntity site;
+    private final int offset;
+    private final int limit;
+
+    public SearchContext(String query, Set<String> lemmas, SiteEntity site, int offset, int limit) {
+        this.query = query;
+        this.lemmas = Set.copyOf(lemmas);
+        this.site = site;
+        this.offset = offset;
+        this.limit = limit;
+    }
+}
@@ -26,4 +26,8 @@ public class IndexEntity {
 
     @Column(name = "rank_in", nullable = false)
     private Float rank;
+
+    // Вхождения леммы в текст страницы в формате PositionCodec; пусто у строк, записанных до появления колонки
+    @Column(name = "positions", columnDefinition = "MEDIUMBLOB")
+    private byte[] positions;
 }
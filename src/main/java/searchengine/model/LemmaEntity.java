@@ -7,7 +7,8 @@ import java.util.List;
 
 @Data
 @Entity
-@Table(name = "lemma")
+// Уникальный ключ (site_id, lemma) нужен для вставки лемм с ON DUPLICATE KEY UPDATE
+@Table(name = "lemma", uniqueConstraints = @UniqueConstraint(name = "uk_lemma_site_lemma", columnNames = {"site_id", "lemma"}))
 public class LemmaEntity {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -0,0 +1,37 @@
+package searchengine.model;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import javax.persistence.*;
+
+// Содержимое страницы вынесено из PageEntity: поиск и статистика читают страницы без HTML,
+// а сжатое содержимое загружается отдельно, только когда оно действительно нужно
+@Getter
+@Setter
+@Entity
+@Table(name = "page_content")
+public class PageContentEntity {
+
+    @Id
+    @Column(name = "page_id")
+    private Integer pageId;
+
+    @MapsId
+    @OneToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "page_id")
+    private PageEntity page;
+
+    // HTML страницы в UTF-8, сжатый Deflate
+    @Column(name = "data", nullable = false, columnDefinition = "MEDIUMBLOB")
+    private byte[] data;
+
+    // Длина исходного HTML в символах
+    @Column(name = "length", nullable = false)
+    private Integer length;
+
+    // Видимый текст страницы, сжатый так же, как HTML. Пуст у страниц, проиндексированных
+    // до появления колонки: для них текст извлекается при первом чтении
+    @Column(name = "text", columnDefinition = "MEDIUMBLOB")
+    private byte[] text;
+}
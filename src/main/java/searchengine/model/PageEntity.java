@@ -29,8 +29,9 @@ public class PageEntity {
     @Column(name = "code", nullable = false)
     private Integer code;
 
-    @Column(name = "content", nullable = false, columnDefinition = "MEDIUMTEXT")
-    private String content;
+    // Заголовок страницы, извлечённый при индексации
+    @Column(name = "title", length = 500)
+    private String title;
 
     @OneToMany(mappedBy = "page", cascade = CascadeType.ALL, orphanRemoval = true)
     private List<IndexEntity> indexes;
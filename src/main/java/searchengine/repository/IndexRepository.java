@@ -3,21 +3,24 @@ package searchengine.repository;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
+import searchengine.dto.search.RankedPage;
 import searchengine.model.IndexEntity;
-import searchengine.model.LemmaEntity;
 import searchengine.model.PageEntity;
 
+import java.util.Collection;
 import java.util.List;
-import java.util.Optional;
 
 public interface IndexRepository extends JpaRepository<IndexEntity, Integer> {
-    boolean existsByPageAndLemma(PageEntity page, LemmaEntity lemma);
-    List<IndexEntity> findAllByPageId(int pageId);
+    // Совпадение и ранжирование одним запросом: страницы, на которых есть все lemmaCount лемм запроса,
+    // с суммой их рангов. Леммы хранятся по сайтам, но страница относится к одному сайту,
+    // поэтому число различных id на странице равно числу найденных лемм запроса.
+    // Порядок не задан: лучшие страницы для выдачи отбирает сервис поиска
+    @Query("SELECT new searchengine.dto.search.RankedPage(p.id, p.path, SUM(i.rank)) FROM IndexEntity i JOIN i.page p "
+            + "WHERE i.lemma.id IN :lemmaIds GROUP BY p.id, p.path HAVING COUNT(DISTINCT i.lemma.id) = :lemmaCount")
+    List<RankedPage> findRankedPages(@Param("lemmaIds") Collection<Integer> lemmaIds,
+                                     @Param("lemmaCount") long lemmaCount);
 
-    List<IndexEntity> findByPage(PageEntity page);
-    @Query("SELECT i.page FROM IndexEntity i WHERE i.lemma = :lemmaEntity")
-    List<PageEntity> findPagesByLemma(@Param("lemmaEntity") LemmaEntity lemmaEntity);
-
-    @Query("SELECT i.rank FROM IndexEntity i WHERE i.page = :page AND i.lemma = :lemma")
-    Optional<Float> findRankByPageAndLemma(@Param("page") PageEntity page, @Param("lemma") LemmaEntity lemma);
+    @Query("SELECT l.lemma, i.positions FROM IndexEntity i JOIN i.lemma l WHERE i.page = :page AND l.lemma IN :lemmas")
+    List<Object[]> findPositionsByPageAndLemmaIn(@Param("page") PageEntity page,
+                                                 @Param("lemmas") Collection<String> lemmas);
 }
@@ -6,13 +6,15 @@ import org.springframework.data.repository.query.Param;
 import searchengine.model.LemmaEntity;
 import searchengine.model.SiteEntity;
 
+import java.util.Collection;
 import java.util.List;
-import java.util.Optional;
 
 public interface LemmaRepository extends JpaRepository<LemmaEntity, Integer> {
-    Optional<LemmaEntity> findByLemmaAndSite(String lemma, SiteEntity site);
-    @Query("SELECT l FROM LemmaEntity l WHERE l.lemma IN :lemmas ORDER BY l.frequency ASC")
-    List<LemmaEntity> findByLemmaInOrderByFrequencyAsc(@Param("lemmas") List<String> lemmas);
-    List<LemmaEntity> findByLemma(String lemmaName);
+    List<LemmaEntity> findByLemmaIn(Collection<String> lemmas);
+    List<LemmaEntity> findByLemmaInAndSite(Collection<String> lemmas, SiteEntity site);
+    @Query("SELECT l.lemma, l.id FROM LemmaEntity l WHERE l.site = :site")
+    List<Object[]> findIdsBySite(@Param("site") SiteEntity site);
+    @Query("SELECT l.lemma, l.id FROM LemmaEntity l WHERE l.site = :site AND l.lemma IN :lemmas")
+    List<Object[]> findIdsBySiteAndLemmaIn(@Param("site") SiteEntity site, @Param("lemmas") Collection<String> lemmas);
 }
 
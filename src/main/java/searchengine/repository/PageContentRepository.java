@@ -0,0 +1,7 @@
+package searchengine.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import searchengine.model.PageContentEntity;
+
+public interface PageContentRepository extends JpaRepository<PageContentEntity, Integer> {
+}
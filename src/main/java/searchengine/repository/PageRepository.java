@@ -4,15 +4,12 @@ import org.springframework.data.jpa.repository.JpaRepository;
 import searchengine.model.PageEntity;
 import searchengine.model.SiteEntity;
 
-import java.util.List;
 import java.util.Optional;
 
 public interface PageRepository extends JpaRepository<PageEntity, Integer> {
-    void deleteBySite(SiteEntity site);
+    boolean existsBySiteId(Long siteId);
 
-    Optional<PageEntity> findByPath(String url);
-
-    List<PageEntity> findBySiteId(Long siteId);
+    long countBySite(SiteEntity site);
 
     Optional<PageEntity> findBySiteAndPath(SiteEntity site, String path);
 }
@@ -0,0 +1,137 @@
+package searchengine.services;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import searchengine.config.CrawlerSettings;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.function.Supplier;
+
+// Планировщик запросов с ограничением частоты и числа одновременных запросов для каждого хоста.
+// Ожидающие запросы хранятся в очереди хоста, потоки при этом не спят и не блокируются.
+@Slf4j
+@Service
+public class HostPolitenessScheduler {
+
+    private final CrawlerSettings.Politeness settings;
+    private final ConcurrentHashMap<String, HostSlot> hostSlots = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "politeness-timer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public HostPolitenessScheduler(CrawlerSettings crawlerSettings) {
+        this.settings = crawlerSettings.getPoliteness();
+    }
+
+    // Ставит запрос в очередь хоста; запрос выполнится на executor, когда освободится слот
+    public <T> CompletableFuture<T> submit(String host, Supplier<T> request, Executor executor) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        HostSlot slot = hostSlots.computeIfAbsent(host == null ? "" : host, h -> new HostSlot());
+
+        slot.enqueue(new PendingRequest(() -> {
+            try {
+                future.complete(request.get());
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
+            } finally {
+                slot.release();
+            }
+        }, executor, future));
+
+        return future;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        timer.shutdownNow();
+    }
+
+    @RequiredArgsConstructor
+    private static class PendingRequest {
+        private final Runnable task;
+        private final Executor executor;
+        private final CompletableFuture<?> future;
+    }
+
+    // Состояние одного хоста: корзина токенов, счётчик запросов в работе и очередь ожидающих
+    private class HostSlot {
+        private final Deque<PendingRequest> waiting = new ArrayDeque<>();
+        private double tokens = Math.max(1, settings.getBurst());
+        private long lastRefillNanos = System.nanoTime();
+        private int inFlight;
+        private boolean timerArmed;
+
+        void enqueue(PendingRequest request) {
+            synchronized (this) {
+                waiting.addLast(request);
+            }
+            drain();
+        }
+
+        void release() {
+            synchronized (this) {
+                inFlight--;
+            }
+            drain();
+        }
+
+        private void drain() {
+            List<PendingRequest> ready = new ArrayList<>();
+            synchronized (this) {
+                refill();
+                while (!waiting.isEmpty() && inFlight < settings.getMaxInFlightPerHost() && tokens >= 1) {
+                    tokens -= 1;
+                    inFlight++;
+                    ready.add(waiting.pollFirst());
+                }
+                if (!waiting.isEmpty() && inFlight < settings.getMaxInFlightPerHost() && !timerArmed) {
+                    timerArmed = true;
+                    timer.schedule(this::onTimer, nanosUntilNextToken(), TimeUnit.NANOSECONDS);
+                }
+            }
+            ready.forEach(this::dispatch);
+        }
+
+        private void onTimer() {
+            synchronized (this) {
+                timerArmed = false;
+            }
+            drain();
+        }
+
+        private void dispatch(PendingRequest request) {
+            try {
+                request.executor.execute(request.task);
+            } catch (RejectedExecutionException e) {
+                log.warn("Запрос отклонён: пул потоков остановлен");
+                request.future.completeExceptionally(e);
+                release();
+            }
+        }
+
+        private void refill() {
+            long intervalNanos = TimeUnit.MILLISECONDS.toNanos(settings.getMinIntervalMs());
+            int capacity = Math.max(1, settings.getBurst());
+            long now = System.nanoTime();
+            if (intervalNanos <= 0) {
+                tokens = capacity;
+            } else {
+                tokens = Math.min(capacity, tokens + (double) (now - lastRefillNanos) / intervalNanos);
+            }
+            lastRefillNanos = now;
+        }
+
+        private long nanosUntilNextToken() {
+            long intervalNanos = TimeUnit.MILLISECONDS.toNanos(settings.getMinIntervalMs());
+            return Math.max(0, (long) ((1 - tokens) * intervalNanos));
+        }
+    }
+}
@@ -7,11 +7,15 @@ import searchengine.config.Site;
 import searchengine.model.SiteEntity;
 import searchengine.repository.SiteRepository;
 import searchengine.services.crud.SiteCRUDService;
+import searchengine.services.crud.SitePurgeService;
+import searchengine.services.index.InvertedIndex;
 import searchengine.utils.ConfigUtil;
 import searchengine.utils.EntityTableUtil;
 
+import javax.annotation.PreDestroy;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
@@ -29,25 +33,53 @@ public class SiteDataExecutor {
     private final AtomicBoolean isRunning = new AtomicBoolean(false);
     private final ConfigUtil configUtil;
     private final Object lock = new Object();
+    private final SitePurgeService sitePurgeService;
+    private final InvertedIndex invertedIndex;
+    private final ExecutorService refreshExecutor = Executors.newSingleThreadExecutor();
 
     public void refreshAllSitesData() {
-        if (isRunning.get()) {
+        refreshSitesData(configUtil.getAvailableSites());
+    }
+
+    // Обновление в фоне: удаление большого сайта может занять минуты, а запрос на запуск индексации не должен их ждать.
+    // Результат false — обновление уже выполняется
+    public CompletableFuture<Boolean> refreshSitesDataAsync(List<Site> sitesToRefresh) {
+        if (!isRunning.compareAndSet(false, true)) {
+            log.info("Обновление новых данных уже запущено. Ожидайте завершения.");
+            return CompletableFuture.completedFuture(false);
+        }
+        return CompletableFuture.supplyAsync(() -> {
+            doRefreshSitesData(sitesToRefresh);
+            return true;
+        }, refreshExecutor);
+    }
+
+    // Пересоздаёт данные только переданных сайтов; сайты, которых нет в конфигурации, удаляются
+    public void refreshSitesData(List<Site> sitesToRefresh) {
+        if (!isRunning.compareAndSet(false, true)) {
             log.info("Обновление новых данных уже запущено. Ожидайте завершения.");
             return;
         }
+        doRefreshSitesData(sitesToRefresh);
+    }
 
+    public boolean isRunning() {
+        return isRunning.get();
+    }
+
+    private void doRefreshSitesData(List<Site> sitesToRefresh) {
         log.info("Начало обновления данных для всех сайтов...");
 
         initializeExecutorService();
 
-        isRunning.set(true);
-
         try {
             siteCRUDService.deleteSitesNotInConfig(configUtil.getAvailableSites());
-            List<Site> configuredSites = configUtil.getAvailableSites();
-            deleteSitesInParallel(configuredSites);
-            entityTableUtil.resetAutoIncrementForAllTables();
-            createOrUpdateSites(configuredSites);
+            deleteSitesInParallel(sitesToRefresh);
+            // Индекс в памяти переживает удаление сайтов: повторно выданные id не должны встретить в нём старые данные
+            if (!invertedIndex.isEnabled()) {
+                entityTableUtil.resetAutoIncrementForAllTables();
+            }
+            createOrUpdateSites(sitesToRefresh);
             log.info("Обновление данных завершено.");
         } finally {
             shutdownExecutor();
@@ -94,14 +126,13 @@ public class SiteDataExecutor {
             return;
         }
 
-        try {
-            for (SiteEntity site : sitesToDelete) {
-                log.info("Удаление сайта: {}", site.getUrl());
-            }
-            siteRepository.deleteAll(sitesToDelete);
-            log.info("Удаление завершено. Всего удалено сайтов: {}", sitesToDelete.size());
-        } catch (Exception ignored) {
+        List<Long> siteIds = new ArrayList<>();
+        for (SiteEntity site : sitesToDelete) {
+            log.info("Удаление сайта: {}", site.getUrl());
+            siteIds.add(site.getId());
         }
+        sitePurgeService.purgeSites(siteIds);
+        log.info("Удаление завершено. Всего удалено сайтов: {}", sitesToDelete.size());
     }
 
     private void createOrUpdateSites(List<Site> configuredSites) {
@@ -122,6 +153,11 @@ public class SiteDataExecutor {
         }));
     }
 
+    @PreDestroy
+    public void shutdownRefreshExecutor() {
+        refreshExecutor.shutdownNow();
+    }
+
     private void shutdownExecutor() {
         log.info("Ожидание завершения всех потоков ExecutorService...");
         executorService.shutdown();
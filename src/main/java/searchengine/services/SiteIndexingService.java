@@ -3,21 +3,34 @@ package searchengine.services;
 import lombok.Getter;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.jsoup.nodes.Document;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import searchengine.config.CrawlerSettings;
 import searchengine.config.FakeConfig;
 import searchengine.constants.ErrorMessages;
+import searchengine.model.SiteEntity;
+import searchengine.services.crud.IndexBatchWriter;
+import searchengine.services.crud.LemmaCRUDService;
+import searchengine.services.crud.LemmaFrequencyCounter;
 import searchengine.services.crud.SiteCRUDService;
-import searchengine.task.LinkTask;
+import searchengine.task.CrawlFrontier;
+import searchengine.task.FrontierEntry;
+import searchengine.task.FrontierJournal;
+import searchengine.task.LinkProcessorTask;
+import searchengine.task.UrlCanonicalizer;
+import searchengine.task.VisitedUrlSet;
+import searchengine.task.pipeline.IndexingPipeline;
 import searchengine.utils.PageProcessorUtil;
 import searchengine.utils.HtmlLoaderUtil;
+import searchengine.utils.MorphCache;
 
-import java.util.ArrayList;
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.List;
-import java.util.concurrent.CancellationException;
+import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 @Slf4j
@@ -26,12 +39,18 @@ import java.util.concurrent.atomic.AtomicBoolean;
 @Getter
 public class SiteIndexingService {
 
-    private ForkJoinPool forkJoinPool = new ForkJoinPool();
+    private ExecutorService workerPool;
+    private volatile CrawlFrontier frontier;
     private final AtomicBoolean isProcessing = new AtomicBoolean(false);
     private final FakeConfig fakeConfig;
     private final AtomicBoolean manuallyStopped = new AtomicBoolean(false);
     private final SiteCRUDService siteCRUDService;
     private final PageProcessorUtil pageProcessorUtil;
+    private final CrawlerSettings crawlerSettings;
+    private final IndexBatchWriter indexBatchWriter;
+    private final LemmaCRUDService lemmaCRUDService;
+    private final LemmaFrequencyCounter lemmaFrequencyCounter;
+    private final MorphCache morphCache;
     private static final ConcurrentHashMap<String, AtomicBoolean> siteStopFlags = new ConcurrentHashMap<>();
     private static final AtomicBoolean stopProcessing = new AtomicBoolean(false);
     @Value("${site-indexing.max-depth}")
@@ -40,68 +59,146 @@ public class SiteIndexingService {
     private final HtmlLoaderUtil htmlLoaderUtil;
 
     public void processSites() {
+        processSites(false);
+    }
+
+    // resume — продолжить обход сайтов, для которых сохранён журнал очереди, вместо обхода с главной страницы
+    public void processSites(boolean resume) {
         log.info("Запуск индексации страниц сайта..");
-        if (isProcessing.get()) {
+        if (!isProcessing.compareAndSet(false, true)) {
             log.info(ErrorMessages.INDEXING_ALREADY_RUNNING);
             return;
         }
 
-        isProcessing.set(true);
         manuallyStopped.set(false);
-        stopAllProcessing();
         resetStopProcessing();
 
-        setupForkJoinPool();
+        try {
+            List<String> sitesUrls = siteCRUDService.getSitesForIndexing();
+            FrontierJournal journal = createJournal();
+            CrawlFrontier runFrontier = new CrawlFrontier(crawlerSettings.getFrontier().getCapacity(),
+                    journal, journalDirectory(), siteCRUDService::updateSiteStatusAfterIndexing);
+            frontier = runFrontier;
+            Map<String, LinkProcessorTask> linkProcessors = seedFrontier(runFrontier, journal, sitesUrls, resume);
+
+            IndexingPipeline pipeline = new IndexingPipeline(runFrontier, linkProcessors, getMaxDepth(), fakeConfig,
+                    siteCRUDService, pageProcessorUtil, htmlLoaderUtil, morphCache, crawlerSettings);
+            ExecutorService runPool = setupWorkerPool(pipeline.threadCount());
+
+            pipeline.start(runPool)
+                    .whenComplete((ignored, e) -> {
+                        if (e != null) {
+                            log.error(ErrorMessages.INDEXING_ERROR + e.getMessage());
+                        }
+                        flushIndexBuffers();
+                        finishStoppedSites(runFrontier, sitesUrls);
+                        journal.close();
+                        runFrontier.close();
+                        runPool.shutdown();
+                        if (frontier == runFrontier) {
+                            completeIndexing();
+                            isProcessing.set(false);
+                        }
+                    });
+        } catch (Exception e) {
+            log.error(ErrorMessages.INDEXING_ERROR + e.getMessage());
+            isProcessing.set(false);
+        }
+    }
 
-        forkJoinPool.execute(() -> {
-            try {
-                List<String> sitesUrls = siteCRUDService.getSitesForIndexing();
-                List<LinkTask> tasks = processEachSite(sitesUrls);
+    // Сайты, обход которых прерван остановкой, получают итоговый статус так же, как завершённые
+    private void finishStoppedSites(CrawlFrontier runFrontier, List<String> sitesUrls) {
+        if (!runFrontier.isStopped()) {
+            return;
+        }
+        for (String siteUrl : sitesUrls) {
+            if (!runFrontier.isSiteFinished(siteUrl)) {
+                siteCRUDService.updateSiteStatusAfterIndexing(siteUrl);
+            }
+        }
+    }
 
-                waitForTasksCompletion(tasks);
+    public boolean hasCheckpoint(String siteUrl) {
+        return FrontierJournal.hasCheckpoint(journalDirectory(), siteUrl);
+    }
 
-                completeIndexing();
+    private FrontierJournal createJournal() {
+        CrawlerSettings.Frontier settings = crawlerSettings.getFrontier();
+        return new FrontierJournal(journalDirectory(), settings.getCheckpointIntervalSeconds(),
+                settings.getCompactThreshold(), this::flushIndexBuffers);
+    }
 
-            } catch (Exception e) {
-                log.error(ErrorMessages.INDEXING_ERROR + e.getMessage());
-                e.printStackTrace();
-            } finally {
-                isProcessing.set(false);
-            }
-        });
+    // Строки индекса и прирост частоты лемм обработанных страниц записываются в базу
+    private void flushIndexBuffers() {
+        indexBatchWriter.flush();
+        lemmaFrequencyCounter.flush();
     }
 
-    private void setupForkJoinPool() {
-        if (forkJoinPool != null && !forkJoinPool.isShutdown()) {
-            forkJoinPool.shutdown();
-        }
-        forkJoinPool = new ForkJoinPool();
+    private Path journalDirectory() {
+        return Path.of(crawlerSettings.getFrontier().getJournalDir());
     }
 
-    private List<LinkTask> processEachSite(List<String> sitesUrls) {
-        List<LinkTask> tasks = new ArrayList<>();
+    // Ставит в очередь главные страницы сайтов (или восстанавливает очередь из журнала); дальше обход идёт в ширину
+    private Map<String, LinkProcessorTask> seedFrontier(CrawlFrontier runFrontier, FrontierJournal journal,
+                                                        List<String> sitesUrls, boolean resume) {
+        Map<String, LinkProcessorTask> linkProcessors = new ConcurrentHashMap<>();
 
         for (String siteUrl : sitesUrls) {
             try {
                 siteStopFlags.put(siteUrl, new AtomicBoolean(false));
-                Document doc = htmlLoaderUtil.fetchHtmlDocument(siteUrl, fakeConfig);
-                if (doc == null) {
-                    siteCRUDService.updateSiteStatusAfterIndexing(siteUrl);
-                }
+                LinkProcessorTask linkProcessor = new LinkProcessorTask(new UrlCanonicalizer(siteUrl),
+                        VisitedUrlSet.create(crawlerSettings.getVisited()));
+                linkProcessors.put(siteUrl, linkProcessor);
+                loadLemmaDictionary(siteUrl);
 
-                if (doc != null) {
-                    LinkTask linkTask = new LinkTask(
-                            doc, siteUrl, 0, getMaxDepth(), fakeConfig, siteCRUDService, pageProcessorUtil);
-                    tasks.add(linkTask);
-                    forkJoinPool.execute(linkTask);
+                if (resume && hasCheckpoint(siteUrl)) {
+                    resumeSite(runFrontier, journal, siteUrl, linkProcessor);
                 } else {
-                    log.info(ErrorMessages.FAILED_TO_LOAD_HTML + siteUrl);
+                    journal.start(siteUrl);
+                    runFrontier.offer(new FrontierEntry(siteUrl, 0, siteUrl));
                 }
             } catch (Exception e) {
-                log.info(ErrorMessages.ERROR_PROCESS_SITE + sitesUrls + e.getMessage());
+                log.info(ErrorMessages.ERROR_PROCESS_SITE + siteUrl + e.getMessage());
             }
         }
-        return tasks;
+        return linkProcessors;
+    }
+
+    // При продолжении обхода в таблице уже есть леммы сайта: их id загружаются заранее, а не по одной
+    private void loadLemmaDictionary(String siteUrl) {
+        SiteEntity site = siteCRUDService.getSiteByUrl(siteUrl);
+        if (site != null) {
+            lemmaCRUDService.loadDictionary(site);
+        }
+    }
+
+    private void resumeSite(CrawlFrontier runFrontier, FrontierJournal journal, String siteUrl,
+                            LinkProcessorTask linkProcessor) throws IOException {
+        // Прирост частоты лемм мог не дойти до базы до остановки: частоты пересчитываются по строкам индекса,
+        // чтобы повторная индексация незавершённых страниц вычитала ровно то, что было добавлено
+        SiteEntity site = siteCRUDService.getSiteByUrl(siteUrl);
+        if (site != null) {
+            flushIndexBuffers();
+            lemmaCRUDService.recountFrequencies(site);
+        }
+        // Адреса из журнала сразу уходят в очередь обхода: при переполнении она сбрасывает их на диск
+        int pending = journal.restore(siteUrl, linkProcessor::markVisited, runFrontier::restore);
+        if (pending == 0) {
+            log.info("В журнале нет необработанных адресов, обход сайта завершён: {}", siteUrl);
+            journal.finish(siteUrl);
+            siteCRUDService.updateSiteStatusAfterIndexing(siteUrl);
+            return;
+        }
+
+        log.info("Продолжение обхода сайта {}: {} адресов в очереди", siteUrl, pending);
+    }
+
+    private ExecutorService setupWorkerPool(int threads) {
+        if (workerPool != null && !workerPool.isShutdown()) {
+            workerPool.shutdown();
+        }
+        workerPool = Executors.newFixedThreadPool(Math.max(1, threads));
+        return workerPool;
     }
 
     private boolean allSitesStopped() {
@@ -112,20 +209,6 @@ public class SiteIndexingService {
         return siteStopFlags.get(siteUrl);
     }
 
-    private void waitForTasksCompletion(List<LinkTask> tasks) {
-        int canceledTask = 0;
-        for (LinkTask task : tasks) {
-            try {
-                task.join();
-            } catch (CancellationException ignored) {
-                canceledTask++;
-            }
-        }
-        if (canceledTask > 0) {
-            log.info("Количество отмененных задача: " + canceledTask);
-        }
-    }
-
     private void completeIndexing() {
         if (!manuallyStopped.get()) {
             log.info("Индексация завершена автоматически.");
@@ -138,6 +221,7 @@ public class SiteIndexingService {
         }
     }
 
+    // Остановка: очередь очищается, рабочие потоки завершаются после текущей страницы
     public synchronized void stopProcessing() {
         if (!isProcessing.get()) {
             log.info(ErrorMessages.PROCESS_NOT_RUNNING);
@@ -148,8 +232,6 @@ public class SiteIndexingService {
             log.info("Остановка индексации вручную...");
             stopAllProcessing();
 
-            List<LinkTask> tasks = new ArrayList<>();
-
             siteStopFlags.keySet().forEach(siteUrl -> {
                 AtomicBoolean stopFlag = getStopFlagForSite(siteUrl);
                 if (stopFlag != null) {
@@ -157,10 +239,8 @@ public class SiteIndexingService {
                 }
             });
 
-            waitForTasksCompletion(tasks);
-
-            if (forkJoinPool != null && !forkJoinPool.isShutdown()) {
-                forkJoinPool.shutdownNow();
+            if (frontier != null) {
+                frontier.stop();
             }
 
             isProcessing.set(false);
@@ -182,4 +262,4 @@ public class SiteIndexingService {
     public boolean isIndexing() {
         return isProcessing.get();
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,170 @@
+package searchengine.services.crud;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionException;
+import org.springframework.transaction.support.TransactionTemplate;
+import searchengine.config.CrawlerSettings;
+import searchengine.constants.ErrorMessages;
+import searchengine.repository.SiteRepository;
+import searchengine.services.index.InvertedIndex;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// Пакетная запись строк index_table через JDBC. Из-за IDENTITY-ключей Hibernate не объединяет вставки,
+// поэтому строки копятся в буфере и пишутся пачкой, когда их набирается batch-rows или проходит flush-interval-ms.
+// С rewriteBatchedStatements=true драйвер MySQL превращает пачку в один многострочный INSERT.
+// Пачка пишется в транзакции: если она не записалась, строки сохраняются и повторяются при следующей записи,
+// а после второй неудачи пишутся по одной — теряются только строки, которые база не принимает.
+@Slf4j
+@Service
+public class IndexBatchWriter {
+    private static final String INSERT_SQL = "INSERT INTO index_table (page_id, lemma_id, rank_in, positions) "
+            + "VALUES (?, ?, ?, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final InvertedIndex invertedIndex;
+    private final SiteRepository siteRepository;
+    private final SiteCRUDService siteCRUDService;
+    private final int batchRows;
+    private final ScheduledExecutorService flushTimer;
+    private final Object writeLock = new Object();
+    private List<IndexRow> buffer;
+    // Пачка, не записанная с первой попытки; доступ под writeLock
+    private List<IndexRow> retryRows = Collections.emptyList();
+
+    @Getter
+    @RequiredArgsConstructor
+    public static class IndexRow {
+        private final long siteId;
+        private final int pageId;
+        private final int lemmaId;
+        private final float rank;
+        private final byte[] positions;
+    }
+
+    public IndexBatchWriter(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+                            InvertedIndex invertedIndex, SiteRepository siteRepository,
+                            SiteCRUDService siteCRUDService, CrawlerSettings crawlerSettings) {
+        CrawlerSettings.IndexWriter settings = crawlerSettings.getIndexWriter();
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.invertedIndex = invertedIndex;
+        this.siteRepository = siteRepository;
+        this.siteCRUDService = siteCRUDService;
+        this.batchRows = Math.max(1, settings.getBatchRows());
+        this.buffer = new ArrayList<>(batchRows);
+        this.flushTimer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "index-batch-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = Math.max(1, settings.getFlushIntervalMs());
+        flushTimer.scheduleWithFixedDelay(this::flush, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    // Полная пачка пишется в вызывающем потоке — так запись в базу притормаживает стадию, которая её наполняет
+    public void add(List<IndexRow> rows) {
+        boolean full;
+        synchronized (this) {
+            buffer.addAll(rows);
+            full = buffer.size() >= batchRows;
+        }
+        if (full) {
+            flush();
+        }
+    }
+
+    // Записывает накопленные строки; после возврата в базе есть все строки, добавленные до вызова,
+    // кроме пачки, отложенной на повтор из-за ошибки
+    public void flush() {
+        synchronized (writeLock) {
+            retryFailed();
+            List<IndexRow> pending;
+            synchronized (this) {
+                if (buffer.isEmpty()) {
+                    return;
+                }
+                pending = buffer;
+                buffer = new ArrayList<>(batchRows);
+            }
+            if (!writeBatch(pending)) {
+                retryRows = pending;
+                log.warn("Пачка из {} строк индекса будет записана повторно", pending.size());
+            }
+        }
+    }
+
+    // Повтор отложенной пачки; если она снова не записалась, строки пишутся по одной
+    private void retryFailed() {
+        if (retryRows.isEmpty()) {
+            return;
+        }
+        List<IndexRow> rows = retryRows;
+        retryRows = Collections.emptyList();
+        if (!writeBatch(rows)) {
+            writeRowByRow(rows);
+        }
+    }
+
+    private boolean writeBatch(List<IndexRow> rows) {
+        try {
+            transactionTemplate.executeWithoutResult(status ->
+                    jdbcTemplate.batchUpdate(INSERT_SQL, rows, rows.size(), (ps, row) -> {
+                        ps.setInt(1, row.getPageId());
+                        ps.setInt(2, row.getLemmaId());
+                        ps.setFloat(3, row.getRank());
+                        ps.setBytes(4, row.getPositions());
+                    }));
+            invertedIndex.addRows(rows);
+            log.debug("Записано строк индекса: {}", rows.size());
+            return true;
+        } catch (DataAccessException | TransactionException e) {
+            log.error("Не удалось записать {} строк индекса: {}", rows.size(), e.getMessage());
+            return false;
+        }
+    }
+
+    // Например, страница удалена во время обхода: её строки нарушают внешний ключ, остальные записываются
+    private void writeRowByRow(List<IndexRow> rows) {
+        List<IndexRow> written = new ArrayList<>(rows.size());
+        Map<Long, Integer> droppedBySite = new TreeMap<>();
+        for (IndexRow row : rows) {
+            try {
+                jdbcTemplate.update(INSERT_SQL, row.getPageId(), row.getLemmaId(), row.getRank(), row.getPositions());
+                written.add(row);
+            } catch (DataAccessException e) {
+                droppedBySite.merge(row.getSiteId(), 1, Integer::sum);
+                log.warn("Строка индекса страницы {} не записана: {}", row.getPageId(), e.getMessage());
+            }
+        }
+        invertedIndex.addRows(written);
+        log.info("Записано по одной строк индекса: {}, отброшено: {}", written.size(), rows.size() - written.size());
+
+        droppedBySite.forEach((siteId, dropped) -> siteRepository.findById(siteId).ifPresent(site ->
+                siteCRUDService.updateSiteError(site, ErrorMessages.ERROR_SAVE_INDEX + dropped)));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flushTimer.shutdown();
+        flush();
+        synchronized (writeLock) {
+            retryFailed();
+        }
+    }
+}
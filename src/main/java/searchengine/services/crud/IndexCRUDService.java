@@ -2,39 +2,85 @@ package searchengine.services.crud;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
-import searchengine.model.IndexEntity;
-import searchengine.model.LemmaEntity;
+import searchengine.dto.indexing.LemmaOccurrences;
 import searchengine.model.PageEntity;
-import searchengine.repository.IndexRepository;
+import searchengine.model.SiteEntity;
+import searchengine.services.index.InvertedIndex;
+import searchengine.utils.PositionCodec;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
 @Slf4j
 @Service
 @RequiredArgsConstructor
 public class IndexCRUDService {
-    private final IndexRepository indexRepository;
+    private static final String DECREMENT_SQL = "UPDATE lemma l JOIN index_table i ON i.lemma_id = l.id "
+            + "SET l.frequency = l.frequency - 1 WHERE i.page_id = ?";
+    private static final String UNUSED_LEMMAS_SQL = "SELECT l.id, l.lemma FROM lemma l "
+            + "JOIN index_table i ON i.lemma_id = l.id WHERE i.page_id = ? AND l.frequency <= 0";
 
-    @Transactional
-    public void createIndex(PageEntity page, LemmaEntity lemma, float rank) {
-        if (page == null) {
-            return;
-        }
-        if (lemma == null) {
+    private final LemmaCRUDService lemmaCRUDService;
+    private final IndexBatchWriter indexBatchWriter;
+    private final LemmaFrequencyCounter lemmaFrequencyCounter;
+    private final LemmaDictionary lemmaDictionary;
+    private final JdbcTemplate jdbcTemplate;
+    private final InvertedIndex invertedIndex;
+    private final SnippetCache snippetCache;
+
+    // Леммы страницы записываются пакетными запросами, а не парой запросов на каждую лемму.
+    // Частота лемм копится в LemmaFrequencyCounter, строки индекса — в IndexBatchWriter; в базу они попадают пачками
+    // вместе с данными других страниц. Ранг леммы — число её вхождений, сами вхождения хранятся для сниппетов.
+    public void saveLemmasAndIndexes(PageEntity page, SiteEntity site, Map<String, LemmaOccurrences> lemmas) {
+        if (page == null || site == null || lemmas.isEmpty()) {
             return;
         }
-        if (!indexRepository.existsByPageAndLemma(page, lemma)) {
-            if (lemma.getSite() == null) {
-                return;
+
+        Map<String, Integer> lemmaIds = lemmaCRUDService.upsertLemmas(site, lemmas.keySet());
+
+        List<IndexBatchWriter.IndexRow> rows = new ArrayList<>(lemmas.size());
+        for (Map.Entry<String, LemmaOccurrences> entry : lemmas.entrySet()) {
+            Integer lemmaId = lemmaIds.get(entry.getKey());
+            if (lemmaId == null) {
+                log.warn("Лемма не найдена после вставки: {}", entry.getKey());
+                continue;
             }
-            IndexEntity index = new IndexEntity();
-            populateIndexEntity(index, page, lemma, rank);
-            indexRepository.save(index);
+            LemmaOccurrences occurrences = entry.getValue();
+            rows.add(new IndexBatchWriter.IndexRow(site.getId(), page.getId(), lemmaId,
+                    occurrences.count(), PositionCodec.encode(occurrences)));
         }
+        indexBatchWriter.add(rows);
+        lemmaFrequencyCounter.recordPage(lemmaIds.values());
     }
 
-    private void populateIndexEntity(IndexEntity index, PageEntity page, LemmaEntity lemma, float rank) {
-        index.setPage(page);
-        index.setLemma(lemma);
-        index.setRank(rank);
+    // Удаляет страницу из индекса набором запросов вместо записи на каждую строку:
+    // частота лемм страницы уменьшается одним UPDATE с JOIN, затем удаляются строки индекса
+    // и леммы, которые больше не встречаются ни на одной странице
+    @Transactional
+    public void deletePageIndex(SiteEntity site, int pageId) {
+        jdbcTemplate.update(DECREMENT_SQL, pageId);
+        List<Map<String, Object>> unused = jdbcTemplate.queryForList(UNUSED_LEMMAS_SQL, pageId);
+        List<Integer> pageLemmaIds = jdbcTemplate.queryForList("SELECT lemma_id FROM index_table WHERE page_id = ?",
+                Integer.class, pageId);
+        int deletedIndexes = jdbcTemplate.update("DELETE FROM index_table WHERE page_id = ?", pageId);
+        invertedIndex.removePage(pageId, pageLemmaIds);
+        snippetCache.evictPage(pageId);
+
+        if (!unused.isEmpty()) {
+            List<Object> ids = new ArrayList<>(unused.size());
+            for (Map<String, Object> row : unused) {
+                ids.add(row.get("id"));
+                lemmaDictionary.evict(site.getId(), (String) row.get("lemma"));
+            }
+            String placeholders = String.join(", ", Collections.nCopies(ids.size(), "?"));
+            jdbcTemplate.update("DELETE FROM lemma WHERE id IN (" + placeholders + ")", ids.toArray());
+            invertedIndex.removeLemmas(ids.stream().map(id -> ((Number) id).intValue()).toList());
+        }
+        log.info("Удалено строк индекса страницы {}: {}, лемм: {}", pageId, deletedIndexes, unused.size());
     }
 }
@@ -2,53 +2,85 @@ package searchengine.services.crud;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
-import searchengine.model.LemmaEntity;
 import searchengine.model.SiteEntity;
 import searchengine.repository.LemmaRepository;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
 @Service
 @RequiredArgsConstructor
 @Slf4j
 public class LemmaCRUDService {
 
+    private static final int BATCH_SIZE = 500;
+    private static final String INSERT_SQL =
+            "INSERT INTO lemma (site_id, lemma, frequency) VALUES (?, ?, 0) ON DUPLICATE KEY UPDATE frequency = frequency";
+    private static final String RECOUNT_SQL = "UPDATE lemma l LEFT JOIN (SELECT i.lemma_id, COUNT(*) AS pages "
+            + "FROM index_table i JOIN page p ON p.id = i.page_id WHERE p.site_id = ? GROUP BY i.lemma_id) c "
+            + "ON c.lemma_id = l.id SET l.frequency = COALESCE(c.pages, 0) WHERE l.site_id = ?";
+
     private final LemmaRepository lemmaRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final LemmaDictionary lemmaDictionary;
 
+    // Id известных лемм берутся из словаря сайта. Новые леммы вставляются пакетом с частотой 0
+    // (если лемму успел вставить другой поток, строка не меняется), драйвер объединяет пачку
+    // в один многострочный INSERT (rewriteBatchedStatements). Частоту увеличивает LemmaFrequencyCounter
     @Transactional
-    public LemmaEntity updateLemmaEntity(String lemmaText, SiteEntity site) {
-        if (site == null) {
-            return null;
-        }
-
-        LemmaEntity lemma = lemmaRepository.findByLemmaAndSite(lemmaText, site)
-                .orElseGet(() -> createLemmaEntity(lemmaText, site));
-
-        int updatedFrequency = lemma.getFrequency() + 1;
-        lemma.setFrequency(updatedFrequency);
+    public Map<String, Integer> upsertLemmas(SiteEntity site, Collection<String> lemmas) {
+        Map<String, Integer> ids = new HashMap<>(lemmas.size() * 2);
+        List<String> missing = lemmaDictionary.resolve(site.getId(), lemmas, ids);
 
-        return lemmaRepository.save(lemma);
+        if (!missing.isEmpty()) {
+            Collections.sort(missing);
+            jdbcTemplate.batchUpdate(INSERT_SQL, missing, BATCH_SIZE, (ps, lemma) -> {
+                ps.setLong(1, site.getId());
+                ps.setString(2, lemma);
+            });
+            Map<String, Integer> created = findLemmaIds(site, missing);
+            lemmaDictionary.putAll(site.getId(), created);
+            ids.putAll(created);
+        }
+        return ids;
     }
 
-    void updateOrDeleteLemma(LemmaEntity lemma) {
-        int newFrequency = lemma.getFrequency() - 1;
-        if (newFrequency > 0) {
-            lemma.setFrequency(newFrequency);
-            lemmaRepository.save(lemma);
-        } else {
-            lemmaRepository.delete(lemma);
+    // Загружает словарь лемм сайта из базы; вызывается перед обходом сайта
+    @Transactional(readOnly = true)
+    public void loadDictionary(SiteEntity site) {
+        Map<String, Integer> ids = new HashMap<>();
+        for (Object[] row : lemmaRepository.findIdsBySite(site)) {
+            ids.put((String) row[0], (Integer) row[1]);
         }
+        lemmaDictionary.load(site.getId(), ids);
+        log.info("Загружен словарь лемм сайта {}: {}", site.getUrl(), ids.size());
     }
 
-    private LemmaEntity createLemmaEntity(String lemmaText, SiteEntity site) {
-        LemmaEntity newLemma = new LemmaEntity();
-        populateLemmaEntity(newLemma, lemmaText, site);
-        return newLemma;
+    // Частота леммы — число страниц сайта, на которых она встречается, то есть число её строк индекса
+    @Transactional
+    public void recountFrequencies(SiteEntity site) {
+        int updated = jdbcTemplate.update(RECOUNT_SQL, site.getId(), site.getId());
+        log.info("Пересчитаны частоты лемм сайта {}: {}", site.getUrl(), updated);
     }
 
-    private void populateLemmaEntity(LemmaEntity lemma, String lemmaText, SiteEntity site) {
-        lemma.setLemma(lemmaText);
-        lemma.setFrequency(0);
-        lemma.setSite(site);
+    // Идентификаторы лемм сайта одним запросом на пачку
+    @Transactional
+    public Map<String, Integer> findLemmaIds(SiteEntity site, Collection<String> lemmas) {
+        List<String> all = new ArrayList<>(lemmas);
+        Map<String, Integer> ids = new HashMap<>(all.size() * 2);
+        for (int from = 0; from < all.size(); from += BATCH_SIZE) {
+            List<String> chunk = all.subList(from, Math.min(from + BATCH_SIZE, all.size()));
+            for (Object[] row : lemmaRepository.findIdsBySiteAndLemmaIn(site, chunk)) {
+                ids.put((String) row[0], (Integer) row[1]);
+            }
+        }
+        return ids;
     }
 }
@@ -0,0 +1,55 @@
+package searchengine.services.crud;
+
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Словарь «лемма -> id» для каждого сайта. Во время обхода id лемм берутся отсюда,
+// а в таблицу lemma запросы идут только за леммами, которых ещё нет в словаре.
+@Component
+public class LemmaDictionary {
+    private final Map<Long, Map<String, Integer>> sites = new ConcurrentHashMap<>();
+
+    // Раскладывает леммы на известные (их id попадают в ids) и новые, которые возвращаются списком
+    public List<String> resolve(Long siteId, Collection<String> lemmas, Map<String, Integer> ids) {
+        Map<String, Integer> dictionary = sites.computeIfAbsent(siteId, id -> new ConcurrentHashMap<>());
+        List<String> missing = new ArrayList<>();
+        for (String lemma : lemmas) {
+            Integer id = dictionary.get(lemma);
+            if (id != null) {
+                ids.put(lemma, id);
+            } else {
+                missing.add(lemma);
+            }
+        }
+        return missing;
+    }
+
+    public void putAll(Long siteId, Map<String, Integer> ids) {
+        sites.computeIfAbsent(siteId, id -> new ConcurrentHashMap<>()).putAll(ids);
+    }
+
+    // Заменяет словарь сайта загруженным из базы целиком
+    public void load(Long siteId, Map<String, Integer> ids) {
+        sites.put(siteId, new ConcurrentHashMap<>(ids));
+    }
+
+    public void evict(Long siteId, String lemma) {
+        Map<String, Integer> dictionary = sites.get(siteId);
+        if (dictionary != null) {
+            dictionary.remove(lemma);
+        }
+    }
+
+    public void evictSite(Long siteId) {
+        sites.remove(siteId);
+    }
+
+    public void clear() {
+        sites.clear();
+    }
+}
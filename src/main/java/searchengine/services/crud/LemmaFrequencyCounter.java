@@ -0,0 +1,128 @@
+package searchengine.services.crud;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionException;
+import org.springframework.transaction.support.TransactionTemplate;
+import searchengine.config.CrawlerSettings;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+// Прирост частоты лемм копится в памяти и пишется в таблицу lemma пачкой раз в flush-interval-ms
+// или каждые flush-pages страниц. Частые леммы встречаются почти на каждой странице, и запись
+// «прочитать-увеличить-сохранить» на каждую страницу упиралась в блокировки одних и тех же строк.
+@Slf4j
+@Service
+public class LemmaFrequencyCounter {
+    private static final String UPDATE_SQL = "UPDATE lemma SET frequency = frequency + ? WHERE id = ?";
+    private static final int BATCH_SIZE = 1_000;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final int flushPages;
+    private final ScheduledExecutorService flushTimer;
+    // Прирост с прошлой записи. Частые леммы встречаются почти на каждой странице, поэтому счётчик — LongAdder:
+    // потоки увеличивают разные ячейки и не ждут друг друга. Счётчик леммы, не встреченной за интервал
+    // между записями, удаляется из карты, чтобы она не росла вместе со словарём
+    private final Map<Integer, LongAdder> deltas = new ConcurrentHashMap<>();
+    private final AtomicInteger pagesSinceFlush = new AtomicInteger();
+
+    public LemmaFrequencyCounter(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+                                 CrawlerSettings crawlerSettings) {
+        CrawlerSettings.LemmaFrequency settings = crawlerSettings.getLemmaFrequency();
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.flushPages = Math.max(1, settings.getFlushPages());
+        this.flushTimer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "lemma-frequency-flush");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = Math.max(1, settings.getFlushIntervalMs());
+        flushTimer.scheduleWithFixedDelay(this::flush, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    // Каждая лемма страницы увеличивает свою частоту на 1
+    public void recordPage(Collection<Integer> lemmaIds) {
+        for (Integer lemmaId : lemmaIds) {
+            counterFor(lemmaId).increment();
+        }
+        if (pagesSinceFlush.incrementAndGet() >= flushPages) {
+            pagesSinceFlush.set(0);
+            flush();
+        }
+    }
+
+    // Существующий счётчик берётся без блокировки; computeIfAbsent — только для новой леммы
+    private LongAdder counterFor(Integer lemmaId) {
+        LongAdder counter = deltas.get(lemmaId);
+        return counter != null ? counter : deltas.computeIfAbsent(lemmaId, id -> new LongAdder());
+    }
+
+    // Пишет накопленные приросты одним пакетом; id отсортированы, чтобы строки блокировались в одном порядке
+    public synchronized void flush() {
+        Map<Integer, Long> pending = new TreeMap<>();
+        for (Map.Entry<Integer, LongAdder> entry : deltas.entrySet()) {
+            long delta = entry.getValue().sumThenReset();
+            if (delta != 0) {
+                pending.put(entry.getKey(), delta);
+            } else {
+                evict(entry.getKey(), entry.getValue());
+            }
+        }
+        if (pending.isEmpty()) {
+            return;
+        }
+
+        List<Map.Entry<Integer, Long>> rows = new ArrayList<>(pending.entrySet());
+        try {
+            transactionTemplate.executeWithoutResult(status ->
+                    jdbcTemplate.batchUpdate(UPDATE_SQL, rows, BATCH_SIZE, (ps, row) -> {
+                        ps.setLong(1, row.getValue());
+                        ps.setInt(2, row.getKey());
+                    }));
+            log.debug("Обновлена частота лемм: {}", rows.size());
+        } catch (DataAccessException | TransactionException e) {
+            // Пакет откатан целиком: приросты возвращаются в счётчики и будут записаны при следующей попытке
+            rows.forEach(row -> counterFor(row.getKey()).add(row.getValue()));
+            log.error("Не удалось обновить частоту {} лемм: {}", rows.size(), e.getMessage());
+        }
+    }
+
+    // Поток, взявший счётчик до удаления, может увеличить уже удалённый счётчик: такие прибавки
+    // переносятся в новый счётчик леммы
+    private void evict(Integer lemmaId, LongAdder counter) {
+        if (deltas.remove(lemmaId, counter)) {
+            long raced = counter.sumThenReset();
+            if (raced != 0) {
+                counterFor(lemmaId).add(raced);
+            }
+        }
+    }
+
+    // Леммы удалены вместе с сайтом: их прирост записывать некуда, а id после сброса автоинкремента
+    // могут достаться новым леммам
+    public void forget(Collection<Integer> lemmaIds) {
+        lemmaIds.forEach(deltas::remove);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flushTimer.shutdown();
+        flush();
+    }
+}
@@ -2,17 +2,15 @@ package searchengine.services.crud;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
-import searchengine.model.IndexEntity;
-import searchengine.model.LemmaEntity;
+import searchengine.dto.indexing.PageText;
 import searchengine.model.PageEntity;
 import searchengine.model.SiteEntity;
-import searchengine.repository.IndexRepository;
 import searchengine.repository.PageRepository;
 
 import java.time.LocalDateTime;
-import java.util.List;
 import java.util.Optional;
 
 @Slf4j
@@ -21,20 +19,21 @@ import java.util.Optional;
 public class PageCRUDService {
 
     private final PageRepository pageRepository;
-    private final IndexRepository indexRepository;
-    private final LemmaCRUDService lemmaCRUDService;
+    private final IndexCRUDService indexCRUDService;
+    private final JdbcTemplate jdbcTemplate;
+    private final PageContentStore pageContentStore;
 
-    public PageEntity createPageEntity(SiteEntity site, String path, int code, String content) {
+    public PageEntity createPageEntity(SiteEntity site, String path, int code) {
         PageEntity pageEntity = new PageEntity();
         pageEntity.setSite(site);
         pageEntity.setPath(path);
         pageEntity.setCode(code);
-        pageEntity.setContent(content);
         return pageEntity;
     }
 
     @Transactional
-    public PageEntity createPageIfNotExists(SiteEntity site, String path, int code, String content) {
+    public PageEntity createPageIfNotExists(SiteEntity site, String path, int code, String content,
+                                            PageText pageText) {
         if (site == null) {
             return null;
         }
@@ -46,8 +45,10 @@ public class PageCRUDService {
                 return existingPage.get();
             }
 
-            PageEntity pageEntity = createPageEntity(site, path, code, content);
+            PageEntity pageEntity = createPageEntity(site, path, code);
+            pageEntity.setTitle(pageText.getTitle());
             pageRepository.save(pageEntity);
+            pageContentStore.save(pageEntity, content, pageText);
             site.setStatusTime(LocalDateTime.now());
             log.info("Страница создана по пути: {} для сайта: {}. Текущее время: {}",
                     path, site.getName(), site.getStatusTime());
@@ -65,29 +66,13 @@ public class PageCRUDService {
         pageRepository.findBySiteAndPath(siteEntity, path).ifPresentOrElse(
                 page -> {
                     int pageId = page.getId();
-                    deleteIndexesAndLemmasByPageId(pageId);
-                    pageRepository.delete(page);
+                    indexCRUDService.deletePageIndex(siteEntity, pageId);
+                    // Строки индекса уже удалены, каскад коллекции indexes не нужен
+                    jdbcTemplate.update("DELETE FROM page_content WHERE page_id = ?", pageId);
+                    jdbcTemplate.update("DELETE FROM page WHERE id = ?", pageId);
                     log.info("Страница с path {} и связанные данные успешно удалены.", path);
                 },
                 () -> log.warn("Страница с path {} не найдена.", path)
         );
     }
-
-    private void deleteIndexesAndLemmasByPageId(int pageId) {
-        List<IndexEntity> indexes = indexRepository.findAllByPageId(pageId);
-        if (indexes.isEmpty()) {
-            log.warn("Индексы для pageId {} не найдены.", pageId);
-            return;
-        }
-
-        for (IndexEntity index : indexes) {
-            LemmaEntity lemma = index.getLemma();
-            indexRepository.delete(index);
-            if (lemma != null) {
-                lemmaCRUDService.updateOrDeleteLemma(lemma);
-            } else {
-                log.warn("Лемма для indexId {} не найдена.", index.getId());
-            }
-        }
-    }
 }
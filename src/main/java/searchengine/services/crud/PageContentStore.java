@@ -0,0 +1,106 @@
+package searchengine.services.crud;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import searchengine.dto.indexing.PageText;
+import searchengine.model.PageContentEntity;
+import searchengine.model.PageEntity;
+import searchengine.repository.PageContentRepository;
+import searchengine.utils.PageContentCodec;
+
+import javax.annotation.PreDestroy;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Доступ к сжатому содержимому страниц: сжимается при сохранении, распаковывается только при чтении
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class PageContentStore {
+    private static final String TEXT_SQL = "SELECT text FROM page_content WHERE page_id = ?";
+    private static final String DATA_SQL = "SELECT data FROM page_content WHERE page_id = ?";
+
+    private final PageContentRepository pageContentRepository;
+    private final JdbcTemplate jdbcTemplate;
+    // Страницы, текст которых сейчас записывается в фоне
+    private final Set<Integer> backfilling = ConcurrentHashMap.newKeySet();
+    private final ExecutorService backfillExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "page-text-backfill");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @Transactional
+    public void save(PageEntity page, String content, PageText pageText) {
+        PageContentEntity entity = new PageContentEntity();
+        entity.setPage(page);
+        entity.setData(PageContentCodec.compress(content));
+        entity.setLength(content.length());
+        entity.setText(PageContentCodec.compress(pageText.getText()));
+        pageContentRepository.save(entity);
+    }
+
+    // Пустая строка, если содержимое страницы не сохранено
+    @Transactional(readOnly = true)
+    public String load(int pageId) {
+        return pageContentRepository.findById(pageId)
+                .map(entity -> PageContentCodec.decompress(entity.getData()))
+                .orElseGet(() -> {
+                    log.warn("Содержимое страницы {} не найдено", pageId);
+                    return "";
+                });
+    }
+
+    // Видимый текст страницы для сниппетов: читается только колонка text, без HTML.
+    // У страниц, сохранённых без текста, он извлекается из HTML, а запись текста и заголовка
+    // уходит в фоновый поток, чтобы поиск не писал в базу
+    public String loadText(PageEntity page) {
+        List<byte[]> stored = jdbcTemplate.queryForList(TEXT_SQL, byte[].class, page.getId());
+        if (stored.isEmpty()) {
+            log.warn("Содержимое страницы {} не найдено", page.getId());
+            return "";
+        }
+        if (stored.get(0) != null) {
+            return PageContentCodec.decompress(stored.get(0));
+        }
+
+        List<byte[]> data = jdbcTemplate.queryForList(DATA_SQL, byte[].class, page.getId());
+        if (data.isEmpty() || data.get(0) == null) {
+            return "";
+        }
+        PageText pageText = PageText.fromHtml(PageContentCodec.decompress(data.get(0)));
+        page.setTitle(pageText.getTitle());
+        scheduleBackfill(page.getId(), pageText);
+        return pageText.getText();
+    }
+
+    private void scheduleBackfill(int pageId, PageText pageText) {
+        if (!backfilling.add(pageId)) {
+            return;
+        }
+        backfillExecutor.execute(() -> {
+            try {
+                jdbcTemplate.update("UPDATE page_content SET text = ? WHERE page_id = ?",
+                        PageContentCodec.compress(pageText.getText()), pageId);
+                jdbcTemplate.update("UPDATE page SET title = ? WHERE id = ?", pageText.getTitle(), pageId);
+                log.info("Текст страницы {} извлечён из сохранённого HTML", pageId);
+            } catch (DataAccessException e) {
+                log.warn("Не удалось сохранить текст страницы {}: {}", pageId, e.getMessage());
+            } finally {
+                backfilling.remove(pageId);
+            }
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        backfillExecutor.shutdown();
+    }
+}
@@ -7,7 +7,6 @@ import org.springframework.transaction.annotation.Transactional;
 import searchengine.config.Site;
 import searchengine.config.SitesList;
 import searchengine.constants.ErrorMessages;
-import searchengine.model.PageEntity;
 import searchengine.model.SiteEntity;
 import searchengine.repository.PageRepository;
 import searchengine.repository.SiteRepository;
@@ -27,6 +26,7 @@ public class SiteCRUDService {
     private final PageRepository pageRepository;
     private final SitesList sitesList;
     private final ConfigUtil configUtil;
+    private final SitePurgeService sitePurgeService;
 
     @Transactional
     public void createSite(Site site) {
@@ -87,6 +87,25 @@ public class SiteCRUDService {
         }
     }
 
+    @Transactional
+    public void markSiteIndexing(SiteEntity siteEntity) {
+        siteEntity.setStatus(SiteEntity.Status.INDEXING);
+        siteEntity.setStatusTime(LocalDateTime.now());
+        siteEntity.setLastError(null);
+        siteRepository.save(siteEntity);
+        log.info("Статус сайта обновлен на INDEXING: {}", siteEntity.getUrl());
+    }
+
+    public void markSiteFailed(String siteUrl, String errorMessage) {
+        siteRepository.findByUrl(siteUrl).ifPresent(siteEntity -> {
+            siteEntity.setStatus(SiteEntity.Status.FAILED);
+            siteEntity.setStatusTime(LocalDateTime.now());
+            siteEntity.setLastError(errorMessage);
+            siteRepository.save(siteEntity);
+            log.info("Статус сайта обновлён на FAILED: {}", siteUrl);
+        });
+    }
+
     @Transactional
     public void updateSite(Long siteId, Site site) {
         log.info("Обновление записи о сайте: {}, с id {}", site.getUrl(), siteId);
@@ -100,9 +119,7 @@ public class SiteCRUDService {
         SiteEntity siteEntity = siteRepository.findByUrl(siteUrl)
                 .orElseThrow(() -> new IllegalArgumentException("Сайт не найден: " + siteUrl));
 
-        List<PageEntity> pages = pageRepository.findBySiteId(siteEntity.getId());
-
-        if (pages.isEmpty()) {
+        if (!pageRepository.existsBySiteId(siteEntity.getId())) {
             siteEntity.setStatus(SiteEntity.Status.FAILED);
             siteEntity.setStatusTime(LocalDateTime.now());
             siteEntity.setLastError(ErrorMessages.SITE_UNAVAILABLE);
@@ -127,7 +144,6 @@ public class SiteCRUDService {
         siteEntity.setLastError(null);
     }
 
-    @Transactional
     public void deleteSitesNotInConfig(List<Site> configuredSites) {
         log.info("Удаление сайтов, отсутствующих в конфигурации...");
         List<SiteEntity> allSitesInDb = siteRepository.findAll();
@@ -136,18 +152,15 @@ public class SiteCRUDService {
             configuredUrls.add(site.getUrl());
         }
 
-        List<SiteEntity> sitesToDelete = new ArrayList<>();
+        List<Long> sitesToDelete = new ArrayList<>();
         for (SiteEntity siteEntity : allSitesInDb) {
             if (!configuredUrls.contains(siteEntity.getUrl())) {
-                sitesToDelete.add(siteEntity);
+                log.info("Удаляем сайт: " + siteEntity.getUrl());
+                sitesToDelete.add(siteEntity.getId());
             }
         }
 
-        for (SiteEntity siteToDelete : sitesToDelete) {
-            log.info("Удаляем сайт: " + siteToDelete.getUrl());
-            pageRepository.deleteBySite(siteToDelete);
-            siteRepository.delete(siteToDelete);
-        }
+        sitePurgeService.purgeSites(sitesToDelete);
 
         log.info("Удаление завершено. Удалено сайтов: {}", sitesToDelete.size());
     }
@@ -0,0 +1,116 @@
+package searchengine.services.crud;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import searchengine.config.CrawlerSettings;
+import searchengine.services.index.InvertedIndex;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Удаление сайтов целиком без каскадов JPA: Hibernate перед удалением загружал все страницы
+// вместе с содержимым и все строки индекса. Здесь строки удаляются SQL-запросами пачками
+// по chunk-size id, каждая пачка в своей транзакции, поэтому память и журнал отката ограничены.
+@Slf4j
+@Service
+public class SitePurgeService {
+    private final JdbcTemplate jdbcTemplate;
+    private final LemmaDictionary lemmaDictionary;
+    private final LemmaFrequencyCounter lemmaFrequencyCounter;
+    private final InvertedIndex invertedIndex;
+    private final SnippetCache snippetCache;
+    private final int chunkSize;
+    // Ход удаления по адресам сайтов — показывается в статистике, пока сайт удаляется
+    private final Map<String, String> progress = new ConcurrentHashMap<>();
+
+    public SitePurgeService(JdbcTemplate jdbcTemplate, LemmaDictionary lemmaDictionary,
+                            LemmaFrequencyCounter lemmaFrequencyCounter, InvertedIndex invertedIndex,
+                            SnippetCache snippetCache, CrawlerSettings crawlerSettings) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.lemmaDictionary = lemmaDictionary;
+        this.lemmaFrequencyCounter = lemmaFrequencyCounter;
+        this.invertedIndex = invertedIndex;
+        this.snippetCache = snippetCache;
+        this.chunkSize = Math.max(1, crawlerSettings.getPurge().getChunkSize());
+    }
+
+    public void purgeSites(List<Long> siteIds) {
+        for (Long siteId : siteIds) {
+            try {
+                purgeSite(siteId);
+            } catch (Exception e) {
+                log.error("Ошибка при удалении сайта {}: {}", siteId, e.getMessage());
+            }
+        }
+    }
+
+    public void purgeSite(long siteId) {
+        String url = jdbcTemplate.queryForList("SELECT url FROM site WHERE id = ?", String.class, siteId)
+                .stream().findFirst().orElse(String.valueOf(siteId));
+        long start = System.currentTimeMillis();
+        try {
+            deleteSiteRows(siteId, url);
+        } finally {
+            progress.remove(url);
+        }
+        log.info("Сайт {} удалён за {} мс", url, System.currentTimeMillis() - start);
+    }
+
+    public Optional<String> getProgress(String siteUrl) {
+        return Optional.ofNullable(progress.get(siteUrl));
+    }
+
+    private void deleteSiteRows(long siteId, String url) {
+        // Сначала строки индекса и содержимое страниц, затем сами страницы: на них ссылаются внешние ключи
+        long pagesTotal = count("SELECT COUNT(*) FROM page WHERE site_id = ?", siteId);
+        progress.put(url, "Удаление старых данных: страниц 0 из " + pagesTotal);
+        long pagesDeleted = 0;
+        long indexesDeleted = 0;
+        List<Integer> pageIds;
+        while (!(pageIds = nextIds("SELECT id FROM page WHERE site_id = ? ORDER BY id LIMIT ?", siteId)).isEmpty()) {
+            Object[] ids = pageIds.toArray();
+            String in = placeholders(ids.length);
+            indexesDeleted += jdbcTemplate.update("DELETE FROM index_table WHERE page_id IN (" + in + ")", ids);
+            jdbcTemplate.update("DELETE FROM page_content WHERE page_id IN (" + in + ")", ids);
+            pagesDeleted += jdbcTemplate.update("DELETE FROM page WHERE id IN (" + in + ")", ids);
+            progress.put(url, "Удаление старых данных: страниц " + pagesDeleted + " из " + pagesTotal);
+            log.info("Удаление сайта {}: страниц {} из {}, строк индекса {}", url, pagesDeleted, pagesTotal, indexesDeleted);
+        }
+
+        long lemmasTotal = count("SELECT COUNT(*) FROM lemma WHERE site_id = ?", siteId);
+        long lemmasDeleted = 0;
+        List<Integer> lemmaIds;
+        while (!(lemmaIds = nextIds("SELECT id FROM lemma WHERE site_id = ? ORDER BY id LIMIT ?", siteId)).isEmpty()) {
+            Object[] ids = lemmaIds.toArray();
+            lemmasDeleted += jdbcTemplate.update("DELETE FROM lemma WHERE id IN (" + placeholders(ids.length) + ")", ids);
+            invertedIndex.removeLemmas(lemmaIds);
+            lemmaFrequencyCounter.forget(lemmaIds);
+            progress.put(url, "Удаление старых данных: лемм " + lemmasDeleted + " из " + lemmasTotal);
+            log.info("Удаление сайта {}: лемм {} из {}", url, lemmasDeleted, lemmasTotal);
+        }
+
+        jdbcTemplate.update("DELETE FROM site WHERE id = ?", siteId);
+        lemmaDictionary.evictSite(siteId);
+        // Id удалённых страниц будут выданы новым страницам после сброса счётчиков AUTO_INCREMENT
+        snippetCache.clear();
+        log.info("Удалено данных сайта {}: страниц {}, строк индекса {}, лемм {}",
+                url, pagesDeleted, indexesDeleted, lemmasDeleted);
+    }
+
+    private List<Integer> nextIds(String sql, long siteId) {
+        return jdbcTemplate.queryForList(sql, Integer.class, siteId, chunkSize);
+    }
+
+    private long count(String sql, long siteId) {
+        Long count = jdbcTemplate.queryForObject(sql, Long.class, siteId);
+        return count != null ? count : 0;
+    }
+
+    private static String placeholders(int count) {
+        return String.join(", ", Collections.nCopies(count, "?"));
+    }
+}
@@ -0,0 +1,52 @@
+package searchengine.services.crud;
+
+import lombok.EqualsAndHashCode;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Сниппеты по странице и леммам запроса. Ключ — id страницы, а id выдаются заново после удаления сайтов,
+// поэтому сниппеты удалённой страницы вычищаются вместе с её индексом, а при удалении сайта кэш очищается целиком
+@Slf4j
+@Component
+public class SnippetCache {
+    private static final int MAX_SIZE = 500;
+
+    private final Map<Key, String> snippets = new ConcurrentHashMap<>();
+
+    @EqualsAndHashCode
+    @RequiredArgsConstructor
+    private static class Key {
+        private final int pageId;
+        private final Set<String> lemmas;
+    }
+
+    public String get(int pageId, Set<String> lemmas) {
+        return snippets.get(new Key(pageId, lemmas));
+    }
+
+    public void put(int pageId, Set<String> lemmas, String snippet) {
+        trim();
+        snippets.put(new Key(pageId, lemmas), snippet);
+    }
+
+    public void evictPage(int pageId) {
+        snippets.keySet().removeIf(key -> key.pageId == pageId);
+    }
+
+    public void clear() {
+        snippets.clear();
+    }
+
+    // Без общей блокировки: если кэш переполнен, его может очистить и несколько потоков сразу, это безвредно
+    private void trim() {
+        if (snippets.size() > MAX_SIZE) {
+            snippets.clear();
+            log.info("Snippet cache has been cleared");
+        }
+    }
+}
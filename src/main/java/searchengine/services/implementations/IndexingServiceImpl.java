@@ -3,6 +3,7 @@ package searchengine.services.implementations;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
+import searchengine.config.Site;
 import searchengine.constants.ErrorMessages;
 import searchengine.model.SiteEntity;
 import searchengine.repository.PageRepository;
@@ -11,10 +12,12 @@ import searchengine.utils.PageProcessorUtil;
 import searchengine.services.SiteDataExecutor;
 import searchengine.services.SiteIndexingService;
 import searchengine.services.interfaces.IndexingService;
-import searchengine.task.LinkProcessorTask;
 import searchengine.utils.ConfigUtil;
 import searchengine.utils.HtmlLoaderUtil;
 
+import java.util.ArrayList;
+import java.util.List;
+
 @Slf4j
 @Service
 @RequiredArgsConstructor
@@ -26,28 +29,93 @@ public class IndexingServiceImpl implements IndexingService {
     private final ConfigUtil configUtil;
     private final PageRepository pageRepository;
     private final SiteCRUDService siteCRUDService;
+    // Индексация запущена, но обход ещё не начался: идёт удаление старых данных.
+    // Доступ под монитором сервиса, чтобы остановка не проскочила между удалением и началом обхода
+    private boolean startPending;
+    private boolean startCancelled;
 
     @Override
-    public boolean startIndexing() {
-        if (siteIndexingService.isIndexing()) {
+    public synchronized boolean startIndexing(boolean resume) {
+        if (isIndexing()) {
             log.info(ErrorMessages.INDEXING_ALREADY_RUNNING);
             return false;
         }
 
         try {
-            log.info("Запуск процесса индексации...");
-            LinkProcessorTask.clearVisitedLinks();
-            siteDataExecutor.refreshAllSitesData();
-            siteIndexingService.processSites();
+            log.info("Запуск процесса индексации{}...", resume ? " с продолжением прерванного обхода" : "");
+            List<Site> sitesToRefresh = resume ? resumeSites() : configUtil.getAvailableSites();
+            startPending = true;
+            startCancelled = false;
+            // Старые данные удаляются в фоне, обход начинается после их удаления
+            siteDataExecutor.refreshSitesDataAsync(sitesToRefresh)
+                    .thenAccept(refreshed -> {
+                        if (refreshed) {
+                            startCrawl(resume);
+                        } else {
+                            clearStartPending();
+                        }
+                    })
+                    .exceptionally(e -> {
+                        clearStartPending();
+                        log.error(ErrorMessages.ERROR_START_INDEXING + e.getMessage());
+                        return null;
+                    });
             return true;
         } catch (Exception e) {
+            startPending = false;
             log.error(ErrorMessages.ERROR_START_INDEXING + e.getMessage());
             return false;
         }
     }
 
+    // Обход не начинается, если индексацию остановили во время удаления старых данных
+    private synchronized void startCrawl(boolean resume) {
+        startPending = false;
+        if (!startCancelled) {
+            siteIndexingService.processSites(resume);
+            return;
+        }
+
+        log.info("Индексация остановлена до начала обхода.");
+        for (String siteUrl : siteCRUDService.getSitesForIndexing()) {
+            siteCRUDService.markSiteFailed(siteUrl, ErrorMessages.INDEXING_STOPPED);
+        }
+    }
+
+    private synchronized void clearStartPending() {
+        startPending = false;
+    }
+
+    @Override
+    public synchronized boolean isIndexing() {
+        return startPending || siteIndexingService.isIndexing() || siteDataExecutor.isRunning();
+    }
+
+    // Сайты с сохранённым журналом обхода сохраняют свои данные и продолжают индексацию,
+    // возвращаются сайты, которые нужно переиндексировать с нуля
+    private List<Site> resumeSites() {
+        List<Site> sitesToRefresh = new ArrayList<>();
+        for (Site site : configUtil.getAvailableSites()) {
+            String siteUrl = configUtil.formatURL(site.getUrl());
+            SiteEntity siteEntity = siteUrl != null ? siteCRUDService.getSiteByUrl(siteUrl) : null;
+
+            if (siteEntity != null && siteIndexingService.hasCheckpoint(siteUrl)) {
+                log.info("Индексация сайта {} будет продолжена из журнала", siteUrl);
+                siteCRUDService.markSiteIndexing(siteEntity);
+            } else {
+                sitesToRefresh.add(site);
+            }
+        }
+        return sitesToRefresh;
+    }
+
     @Override
-    public boolean stopIndexing() {
+    public synchronized boolean stopIndexing() {
+        if (startPending) {
+            log.info("Остановка индексации: обход не будет запущен после удаления старых данных.");
+            startCancelled = true;
+            return true;
+        }
         if (!siteIndexingService.isIndexing()) {
             log.info(ErrorMessages.INDEXING_NOT_RUNNING);
             return false;
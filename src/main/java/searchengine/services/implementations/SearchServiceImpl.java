@@ -4,68 +4,68 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import searchengine.dto.indexing.LemmaOccurrences;
 import searchengine.dto.search.Pagination;
+import searchengine.dto.search.RankedPage;
+import searchengine.dto.search.SearchContext;
 import searchengine.dto.search.SearchResponse;
 import searchengine.dto.search.SearchResult;
-import searchengine.model.IndexEntity;
-import searchengine.model.LemmaEntity;
 import searchengine.model.PageEntity;
 import searchengine.model.SiteEntity;
 import searchengine.repository.IndexRepository;
+import searchengine.repository.PageRepository;
 import searchengine.repository.SiteRepository;
+import searchengine.services.crud.PageContentStore;
+import searchengine.services.crud.SnippetCache;
 import searchengine.services.interfaces.SearchService;
+import searchengine.utils.PositionCodec;
 import searchengine.utils.QueryUtil;
 import searchengine.utils.SnippetGeneratorUtil;
 
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.stream.Collectors;
 
+// Состояние запроса живёт в SearchContext и локальных переменных: сервис — синглтон,
+// и одновременные запросы из потоков Tomcat не должны видеть данные друг друга
 @Slf4j
 @Service
 @RequiredArgsConstructor
 public class SearchServiceImpl implements SearchService {
 
-    private String currentQuery;
-    private int currentOffset;
     @Value("${search-results.showing-limit}")
     private int limit;
-    private Set<PageEntity> currentMatchingPages;
-    private Map<PageEntity, Float> currentPageRelevanceMap;
-    private Set<String> uniqueLemmas;
-    private final Map<String, SearchResult> snippetCache = new ConcurrentHashMap<>();
-    private float absoluteRelevance;
-    private float maxRelevance;
-    private SiteEntity currentSiteEntity;
+    // Сниппеты строятся для каждой страницы окна, поэтому размер окна из запроса ограничен
+    @Value("${search-results.max-limit:100}")
+    private int maxLimit;
     private final SiteRepository siteRepository;
     private final IndexRepository indexRepository;
+    private final PageRepository pageRepository;
     private final SnippetGeneratorUtil snippetGeneratorUtil;
     private final QueryUtil queryUtil;
+    private final PageContentStore pageContentStore;
+    // Сниппет зависит только от страницы и лемм запроса; релевантность считается заново в каждом запросе
+    private final SnippetCache snippetCache;
 
     @Override
     public SearchResponse search(String query, String site, int offset, int limit) {
         long startTime = System.nanoTime();
         try {
-            this.currentQuery = query;
-            this.currentOffset = offset;
-
             log.info("Starting search with query: '{}', site: '{}', offset: {}, limit: {}",
                     query, site, offset, limit);
 
-            Set<String> uniqueLemmas = queryUtil.extractLemmas(currentQuery);
+            Set<String> uniqueLemmas = queryUtil.extractLemmas(query);
             if (uniqueLemmas.isEmpty()) {
                 return createEmptyResponse("No valid lemmas found");
             }
 
-            this.currentSiteEntity = siteRepository.findByUrl(site).orElse(null);
-            if (site != null && currentSiteEntity == null) {
+            SiteEntity siteEntity = siteRepository.findByUrl(site).orElse(null);
+            if (site != null && siteEntity == null) {
                 return createEmptyResponse("Site not found");
             }
 
-            if (uniqueLemmas.isEmpty()) {
-                return createEmptyResponse(null);
-            }
-            return processSearchResults(uniqueLemmas);
+            // Лимит из запроса, если фронтенд его передал, иначе из настроек; не больше max-limit
+            int pageLimit = Math.min(limit > 0 ? limit : this.limit, maxLimit);
+            SearchContext context = new SearchContext(query, uniqueLemmas, siteEntity, Math.max(offset, 0), pageLimit);
+            return processSearchResults(context);
         } finally {
             long elapsedTime = System.nanoTime() - startTime;
             log.info("Search execution time: {} ms", elapsedTime / 1_000_000);
@@ -78,40 +78,24 @@ public class SearchServiceImpl implements SearchService {
         return new SearchResponse(true, 0, Collections.emptyList(), 0, 0, message);
     }
 
-
-    // Извлекает заголовок из контента.
-    private String extractTitleFromContent(String content) {
-        int titleStart = content.indexOf("<title>");
-        int titleEnd = content.indexOf("</title>");
-        if (titleStart != -1 && titleEnd != -1) {
-            return content.substring(titleStart + 7, titleEnd).trim();
-        }
-        return "No title";
-    }
-
-    public void clearSnippetCache() {
-        synchronized (snippetCache) {
-            int MAX_SNIPPET_CACHE_SIZE = 500;
-            if (snippetCache.size() > MAX_SNIPPET_CACHE_SIZE) {
-                snippetCache.clear();
-                log.info("Snippet cache has been cleared");
-            }
-        }
+    // Заголовок сохранён при индексации страницы.
+    private String getTitle(PageEntity page) {
+        String title = page.getTitle();
+        return title == null || title.isBlank() ? "No title" : title;
     }
 
     // Преобразует страницу в результат поиска.
-    private SearchResult mapToSearchResult(PageEntity page) {
-        clearSnippetCache();
-        String cacheKey = page.getContent().hashCode() + "_" + uniqueLemmas.hashCode();
-
-        if (snippetCache.containsKey(cacheKey)) {
-            return snippetCache.get(cacheKey);
-        }
-
+    private SearchResult mapToSearchResult(SearchContext context, PageEntity page, float absoluteRelevance,
+                                           float maxRelevance) {
         float relativeRelevance = absoluteRelevance / maxRelevance;
-        String title = extractTitleFromContent(page.getContent());
-
-        String snippet = snippetGeneratorUtil.generateSnippet(page.getContent(), currentQuery);
+        // Текст распаковывается только для страниц, попавших в выдачу; HTML при поиске не читается
+        String snippet = snippetCache.get(page.getId(), context.getLemmas());
+        if (snippet == null) {
+            snippet = snippetGeneratorUtil.generateSnippet(pageContentStore.loadText(page), context.getQuery(),
+                    loadOccurrences(context, page));
+            snippetCache.put(page.getId(), context.getLemmas(), snippet);
+        }
+        String title = getTitle(page);
 
         log.info("Page '{}', Max relevance '{}',  Absolute relevance '{}', Relative relevance '{}'",
                 page.getPath(), maxRelevance, absoluteRelevance, relativeRelevance);
@@ -124,7 +108,7 @@ public class SearchServiceImpl implements SearchService {
         String formattedTitle = String.format(sizeFont, title);
         String formattedSnippet = String.format(sizeFont, snippet);
 
-        SearchResult result = SearchResult.builder()
+        return SearchResult.builder()
                 .site(page.getSite().getUrl())
                 .siteName(page.getSite().getName())
                 .uri(page.getPath())
@@ -132,10 +116,18 @@ public class SearchServiceImpl implements SearchService {
                 .snippet(formattedSnippet)
                 .relevance(relativeRelevance)
                 .build();
+    }
 
-        snippetCache.put(cacheKey, result);
-
-        return result;
+    // Вхождения лемм запроса на странице из index_table; null, если у строк индекса нет позиций
+    private Map<String, LemmaOccurrences> loadOccurrences(SearchContext context, PageEntity page) {
+        Map<String, LemmaOccurrences> occurrences = new HashMap<>();
+        for (Object[] row : indexRepository.findPositionsByPageAndLemmaIn(page, context.getLemmas())) {
+            if (row[1] == null) {
+                return null;
+            }
+            occurrences.put((String) row[0], PositionCodec.decode((byte[]) row[1]));
+        }
+        return occurrences;
     }
 
     private SearchResponse buildSearchResponse(int totalResults, List<SearchResult> paginatedSnippets, Pagination pagination) {
@@ -149,25 +141,61 @@ public class SearchServiceImpl implements SearchService {
         );
     }
 
-    private List<SearchResult> getAllUniqueSnippets() {
+    // Результаты окна offset..offset+limit: offset и limit — позиции в списке страниц по релевантности,
+    // поэтому соседние страницы выдачи не пересекаются. Сниппеты и заголовки строятся только для страниц окна;
+    // страницы с пустым сниппетом или повторяющие сниппет уже показанной страницы пропускаются без замены,
+    // и страница выдачи может оказаться короче limit
+    private List<SearchResult> collectWindow(SearchContext context, List<RankedPage> top, float maxRelevance) {
         Set<String> processedSnippets = new HashSet<>();
-        List<SearchResult> uniqueResults = new ArrayList<>();
-
-        List<PageEntity> sortedPages = new ArrayList<>(currentMatchingPages);
-        sortedPages.sort((p1, p2) -> Float.compare(
-                currentPageRelevanceMap.get(p2),
-                currentPageRelevanceMap.get(p1)));
-
-        for (PageEntity page : sortedPages) {
-            this.absoluteRelevance = currentPageRelevanceMap.get(page);
-            SearchResult searchResult = mapToSearchResult(page);
+        List<SearchResult> results = new ArrayList<>();
+        List<RankedPage> window = top.subList(Math.min(context.getOffset(), top.size()), top.size());
+
+        Map<Integer, PageEntity> pages = loadPages(window);
+        for (RankedPage rankedPage : window) {
+            PageEntity page = pages.get(rankedPage.getPageId());
+            if (page == null) {
+                continue;
+            }
+            SearchResult searchResult = mapToSearchResult(context, page, rankedPage.getRelevance().floatValue(),
+                    maxRelevance);
 
             if (searchResult != null && !searchResult.getSnippet().isEmpty()
                     && processedSnippets.add(searchResult.getSnippet())) {
-                uniqueResults.add(searchResult);
+                results.add(searchResult);
             }
         }
-        return uniqueResults;
+        return results;
+    }
+
+    // k самых релевантных страниц по убыванию релевантности: куча из k элементов вместо сортировки всех совпадений.
+    // При равной релевантности выше страница с меньшим id: порядок полный, и окна разных страниц выдачи
+    // берутся из одного и того же ранжирования
+    private List<RankedPage> selectTop(List<RankedPage> rankedPages, int k) {
+        Comparator<RankedPage> byRank = Comparator.comparingDouble(RankedPage::getRelevance).reversed()
+                .thenComparing(RankedPage::getPageId);
+        // В вершине кучи — худшая из отобранных страниц
+        PriorityQueue<RankedPage> heap = new PriorityQueue<>(k, byRank.reversed());
+        for (RankedPage rankedPage : rankedPages) {
+            if (heap.size() < k) {
+                heap.add(rankedPage);
+            } else if (byRank.compare(rankedPage, heap.peek()) < 0) {
+                heap.poll();
+                heap.add(rankedPage);
+            }
+        }
+        List<RankedPage> top = new ArrayList<>(heap);
+        top.sort(byRank);
+        return top;
+    }
+
+    // Страницы результатов загружаются одним запросом
+    private Map<Integer, PageEntity> loadPages(List<RankedPage> rankedPages) {
+        List<Integer> ids = rankedPages.stream().map(RankedPage::getPageId).toList();
+        Map<Integer, PageEntity> pages = new HashMap<>();
+        for (PageEntity page : pageRepository.findAllById(ids)) {
+            pages.put(page.getId(), page);
+        }
+        return pages;
     }
 
     private Pagination calculatePagination(int totalResults, int limit, int offset) {
@@ -177,75 +205,37 @@ public class SearchServiceImpl implements SearchService {
         return new Pagination(totalResults, totalPages, currentPage, limit, offset);
     }
 
-    private List<SearchResult> getPaginatedSnippets(List<SearchResult> allSnippets, Pagination pagination) {
-        return allSnippets.stream()
-                .skip((long) (pagination.getCurrentPage() - 1) * pagination.getLimit())
-                .limit(pagination.getLimit())
-                .toList();
-    }
-
-    // Генерирует ответ для поиска.
-    private SearchResponse generateSearchResponse(Set<String> uniqueLemmas) {
-        this.uniqueLemmas = uniqueLemmas;
-        this.maxRelevance = Collections.max(currentPageRelevanceMap.values());
-
-        List<SearchResult> allSnippets = getAllUniqueSnippets();
-
-        Pagination pagination = calculatePagination(allSnippets.size(), limit, currentOffset);
+    // Генерирует ответ для поиска. Число результатов — число найденных страниц: дубликаты сниппетов
+    // отсеиваются только внутри запрошенного окна, чтобы не строить сниппеты для всех совпадений
+    private SearchResponse generateSearchResponse(SearchContext context, List<RankedPage> rankedPages) {
+        int totalResults = rankedPages.size();
+        Pagination pagination = calculatePagination(totalResults, context.getLimit(), context.getOffset());
+        if (context.getOffset() >= totalResults) {
+            return buildSearchResponse(totalResults, Collections.emptyList(), pagination);
+        }
 
-        List<SearchResult> paginatedSnippets = getPaginatedSnippets(allSnippets, pagination);
+        // Сумма в long: offset приходит из запроса и может быть близок к Integer.MAX_VALUE
+        int k = (int) Math.min(totalResults, (long) context.getOffset() + context.getLimit());
+        List<RankedPage> top = selectTop(rankedPages, k);
+        float maxRelevance = top.get(0).getRelevance().floatValue();
 
-        return buildSearchResponse(allSnippets.size(), paginatedSnippets, pagination);
+        List<SearchResult> results = collectWindow(context, top, maxRelevance);
+        return buildSearchResponse(totalResults, results, pagination);
     }
 
-    // Получает страницы для конкретной леммы.
-    private Set<PageEntity> findPagesForLemma(Set<String> lemmas) {
+    // Обрабатывает результаты поиска: совпадение и релевантность страниц считаются одним запросом.
+    private SearchResponse processSearchResults(SearchContext context) {
         log.info("Finding pages for lemmas: {} and siteEntity: {}",
-                lemmas, currentSiteEntity == null ? "All sites" : currentSiteEntity.getUrl());
-
-        return queryUtil.findMatchingPages(currentQuery, currentSiteEntity);
-    }
-
-    // Получает леммы для страницы.
-    private Set<LemmaEntity> getLemmasForPage(PageEntity page) {
-        return indexRepository.findByPage(page).stream()
-                .map(IndexEntity::getLemma)
-                .collect(Collectors.toSet());
-    }
-
-    // Получает рейтинг для леммы на странице.
-    private float getRankForLemmaAndPage(PageEntity page, LemmaEntity lemma) {
-        return indexRepository.findRankByPageAndLemma(page, lemma).orElse(0f);
-    }
-
-    // Вычисляет абсолютную релевантность страниц.
-    private Map<PageEntity, Float> calculateAbsoluteRelevance() {
-        Map<PageEntity, Float> pageRelevanceMap = new ConcurrentHashMap<>();
-        currentMatchingPages.parallelStream().forEach(page -> {
-            float totalRank = getLemmasForPage(page).stream()
-                    .map(lemmaEntity -> getRankForLemmaAndPage(page, lemmaEntity))
-                    .reduce(0f, Float::sum);
+                context.getLemmas(), context.getSite() == null ? "All sites" : context.getSite().getUrl());
 
-            pageRelevanceMap.put(page, totalRank);
-        });
+        // Страницы приходят без сортировки: в выдачу отбираются только нужные
+        List<RankedPage> rankedPages = queryUtil.findRankedPages(context.getLemmas(), context.getSite());
+        log.info("Found matching pages: {}", rankedPages.size());
 
-        return pageRelevanceMap;
-    }
-
-    // Обрабатывает результаты поиска.
-    private SearchResponse processSearchResults(Set<String> uniqueLemmas) {
-        this.currentMatchingPages = findPagesForLemma(uniqueLemmas);
-        log.info("Found matching pages: {}", currentMatchingPages.size());
-
-        if (currentMatchingPages.isEmpty()) {
+        if (rankedPages.isEmpty()) {
             return createEmptyResponse(null);
         }
 
-        this.currentPageRelevanceMap = calculateAbsoluteRelevance();
-        if (currentPageRelevanceMap.isEmpty()) {
-            return createEmptyResponse("No relevance data found");
-        }
-
-        return generateSearchResponse(uniqueLemmas);
+        return generateSearchResponse(context, rankedPages);
     }
-}
\ No newline at end of file
+}
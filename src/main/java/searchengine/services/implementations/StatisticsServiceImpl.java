@@ -9,11 +9,14 @@ import searchengine.dto.statistics.StatisticsResponse;
 import searchengine.dto.statistics.TotalStatistics;
 import searchengine.model.SiteEntity;
 import searchengine.repository.SiteRepository;
+import searchengine.services.crud.SitePurgeService;
+import searchengine.services.interfaces.IndexingService;
 import searchengine.services.interfaces.StatisticsService;
 import searchengine.utils.ConfigUtil;
 
 import java.time.ZoneId;
 import java.util.List;
+import java.util.Optional;
 import java.util.stream.Collectors;
 
 @Service
@@ -23,6 +26,8 @@ public class StatisticsServiceImpl implements StatisticsService {
     private final SitesList sites;
     private final SiteRepository siteRepository;
     private final ConfigUtil configUtil;
+    private final IndexingService indexingService;
+    private final SitePurgeService sitePurgeService;
 
     @Override
     public StatisticsResponse getStatistics() {
@@ -45,7 +50,9 @@ public class StatisticsServiceImpl implements StatisticsService {
         List<SiteEntity> siteEntities = siteRepository.findAll();
         int totalPages = siteEntities.stream().mapToInt(site -> site.getPages().size()).sum();
         int totalLemmas = siteEntities.stream().mapToInt(site -> site.getLemmas().size()).sum();
-        boolean isIndexing = siteEntities.stream().anyMatch(site -> site.getStatus() == SiteEntity.Status.INDEXING);
+        // Пока удаляются старые данные, статусы сайтов ещё прежние, но индексация уже идёт
+        boolean isIndexing = indexingService.isIndexing()
+                || siteEntities.stream().anyMatch(site -> site.getStatus() == SiteEntity.Status.INDEXING);
 
         TotalStatistics totalStatistics = new TotalStatistics();
         totalStatistics.setSites(totalSites);
@@ -75,6 +82,13 @@ public class StatisticsServiceImpl implements StatisticsService {
             item.setStatusTime(siteEntity != null ? siteEntity.getStatusTime()
                     .atZone(ZoneId.of("Europe/Moscow")).toEpochSecond() * 1000 : 0L);
             item.setError(siteEntity != null && siteEntity.getLastError() != null ? siteEntity.getLastError() : "");
+
+            // Сайт удаляется перед переиндексацией: вместо прежнего статуса показывается ход удаления
+            Optional<String> purgeProgress = sitePurgeService.getProgress(formattedUrl);
+            if (purgeProgress.isPresent()) {
+                item.setStatus(SiteEntity.Status.INDEXING.name());
+                item.setPurgeProgress(purgeProgress.get());
+            }
             item.setPages(siteEntity != null ? siteEntity.getPages().size() : 0);
             item.setLemmas(siteEntity != null ? siteEntity.getLemmas().size() : 0);
 
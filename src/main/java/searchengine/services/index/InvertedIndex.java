@@ -0,0 +1,287 @@
+package searchengine.services.index;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Service;
+import searchengine.dto.search.RankedPage;
+import searchengine.services.crud.IndexBatchWriter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Копия index_table в памяти для обслуживания поиска: для каждой леммы — отсортированные id страниц
+// и ранги в примитивных массивах. MySQL остаётся основным хранилищем: индекс загружается из него
+// при старте в фоне и дальше обновляется вместе с записью строк индекса. Пока загрузка не закончена,
+// поиск идёт через SQL, а если загрузка не удалась, индекс отключается до перезапуска.
+// Удалённая страница убирается из списков своих лемм, поэтому её id может достаться новой странице;
+// списки удалённых лемм выбрасываются целиком.
+@Slf4j
+@Service
+public class InvertedIndex {
+    private static final String LOAD_SQL = "SELECT lemma_id, page_id, rank_in FROM index_table";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final boolean enabled;
+    private final Map<Integer, PostingList> postings = new ConcurrentHashMap<>();
+    private final Object loadLock = new Object();
+    // Изменения, пришедшие во время загрузки; применяются после неё в том же порядке
+    private final List<Runnable> pendingChanges = new ArrayList<>();
+    private final Set<Integer> deletedDuringLoad = new HashSet<>();
+    private volatile boolean loaded;
+    // Загрузка не удалась: индекс не используется и изменения в него больше не копятся
+    private volatile boolean failed;
+
+    public InvertedIndex(JdbcTemplate jdbcTemplate,
+                         @Value("${search-results.in-memory-index:false}") boolean enabled) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.enabled = enabled;
+    }
+
+    public boolean isReady() {
+        return enabled && loaded;
+    }
+
+    public boolean isEnabled() {
+        return enabled && !failed;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadInBackground() {
+        if (!enabled) {
+            return;
+        }
+        Thread loader = new Thread(this::load, "inverted-index-loader");
+        loader.setDaemon(true);
+        loader.start();
+    }
+
+    private void load() {
+        long start = System.currentTimeMillis();
+        try {
+            // Строки читаются потоком (fetchSize = MIN_VALUE для драйвера MySQL), а не одним списком
+            JdbcTemplate streaming = new JdbcTemplate(Objects.requireNonNull(jdbcTemplate.getDataSource()));
+            streaming.setFetchSize(Integer.MIN_VALUE);
+            Map<Integer, LoadBuffer> buffers = new HashMap<>();
+            long[] rows = {0};
+            streaming.query(LOAD_SQL, (RowCallbackHandler) resultSet -> {
+                buffers.computeIfAbsent(resultSet.getInt(1), id -> new LoadBuffer())
+                        .add(resultSet.getInt(2), resultSet.getFloat(3));
+                rows[0]++;
+            });
+
+            synchronized (loadLock) {
+                buffers.forEach((lemmaId, buffer) -> {
+                    if (!deletedDuringLoad.contains(lemmaId)) {
+                        postings.put(lemmaId, buffer.toPostingList());
+                    }
+                });
+                pendingChanges.forEach(Runnable::run);
+                pendingChanges.clear();
+                deletedDuringLoad.clear();
+                loaded = true;
+            }
+            log.info("Индекс в памяти загружен за {} мс: лемм {}, строк {}",
+                    System.currentTimeMillis() - start, postings.size(), rows[0]);
+        } catch (Exception e) {
+            synchronized (loadLock) {
+                failed = true;
+                pendingChanges.clear();
+                deletedDuringLoad.clear();
+                postings.clear();
+            }
+            log.error("Не удалось загрузить индекс в память, поиск продолжит работать через SQL", e);
+        }
+    }
+
+    // Вызывается после успешной записи строк индекса в базу
+    public void addRows(List<IndexBatchWriter.IndexRow> rows) {
+        if (isEnabled() && !deferUntilLoaded(() -> apply(rows))) {
+            apply(rows);
+        }
+    }
+
+    private void apply(List<IndexBatchWriter.IndexRow> rows) {
+        for (IndexBatchWriter.IndexRow row : rows) {
+            postings.computeIfAbsent(row.getLemmaId(), id -> new PostingList()).add(row.getPageId(), row.getRank());
+        }
+    }
+
+    // Вызывается при удалении строк индекса страницы; lemmaIds — леммы, строки которых были на странице
+    public void removePage(int pageId, Collection<Integer> lemmaIds) {
+        if (isEnabled() && !deferUntilLoaded(() -> removeFromLists(pageId, lemmaIds))) {
+            removeFromLists(pageId, lemmaIds);
+        }
+    }
+
+    private void removeFromLists(int pageId, Collection<Integer> lemmaIds) {
+        for (Integer lemmaId : lemmaIds) {
+            PostingList postingList = postings.get(lemmaId);
+            if (postingList != null) {
+                postingList.remove(pageId);
+            }
+        }
+    }
+
+    public void removeLemmas(Collection<Integer> lemmaIds) {
+        if (!isEnabled()) {
+            return;
+        }
+        synchronized (loadLock) {
+            if (failed) {
+                return;
+            }
+            if (!loaded) {
+                deletedDuringLoad.addAll(lemmaIds);
+                pendingChanges.add(() -> lemmaIds.forEach(postings::remove));
+            }
+            lemmaIds.forEach(postings::remove);
+        }
+    }
+
+    // Во время загрузки изменение откладывается: загружаемые строки могли быть прочитаны до него.
+    // false — индекс уже загружен и изменение нужно применить сразу; если загрузка не удалась, изменение отбрасывается
+    private boolean deferUntilLoaded(Runnable change) {
+        if (loaded) {
+            return false;
+        }
+        synchronized (loadLock) {
+            if (loaded) {
+                return false;
+            }
+            if (!failed) {
+                pendingChanges.add(change);
+            }
+            return true;
+        }
+    }
+
+    // Страницы, на которых есть все леммы запроса, с суммой их рангов, без сортировки.
+    // Леммы хранятся по сайтам, поэтому на вход приходят id лемм запроса, сгруппированные по сайтам:
+    // страница сайта подходит, если она есть в списках всех лемм этого сайта
+    public List<RankedPage> findRankedPages(Collection<List<Integer>> lemmaIdsBySite) {
+        List<RankedPage> result = new ArrayList<>();
+        for (List<Integer> lemmaIds : lemmaIdsBySite) {
+            List<PostingList.Snapshot> lists = new ArrayList<>(lemmaIds.size());
+            for (Integer lemmaId : lemmaIds) {
+                PostingList postingList = postings.get(lemmaId);
+                if (postingList == null) {
+                    lists = null;
+                    break;
+                }
+                lists.add(postingList.snapshot());
+            }
+            if (lists != null && !lists.isEmpty()) {
+                intersect(lists, result);
+            }
+        }
+        return result;
+    }
+
+    // Пересечение от самой редкой леммы к самой частой: кандидаты — страницы самого короткого списка,
+    // каждый следующий список только отсеивает их. В плотном списке страница проверяется по массиву рангов,
+    // в разреженном — галопирующим поиском от места предыдущей находки, так что проход по списку стоит
+    // O(k·log(n/k)) для k кандидатов. Как только кандидатов не осталось, остальные списки не читаются
+    static void intersect(List<PostingList.Snapshot> lists, List<RankedPage> result) {
+        lists.sort(Comparator.comparingInt(snapshot -> snapshot.size));
+        PostingList.Snapshot shortest = lists.get(0);
+
+        int count = shortest.size;
+        int[] candidates = Arrays.copyOf(shortest.pageIds, count);
+        double[] relevance = new double[count];
+        for (int i = 0; i < count; i++) {
+            relevance[i] = shortest.ranks[i];
+        }
+
+        for (int l = 1; l < lists.size() && count > 0; l++) {
+            PostingList.Snapshot other = lists.get(l);
+            float[] denseRanks = other.denseRanks();
+            int kept = 0;
+            int cursor = 0;
+            for (int c = 0; c < count; c++) {
+                int pageId = candidates[c];
+                float rank;
+                if (denseRanks != null) {
+                    int slot = pageId - other.firstPageId();
+                    rank = slot >= 0 && slot < denseRanks.length ? denseRanks[slot] : Float.NaN;
+                } else {
+                    cursor = gallop(other.pageIds, cursor, other.size, pageId);
+                    if (cursor == other.size) {
+                        break;
+                    }
+                    rank = other.pageIds[cursor] == pageId ? other.ranks[cursor] : Float.NaN;
+                }
+                if (!Float.isNaN(rank)) {
+                    candidates[kept] = pageId;
+                    relevance[kept] = relevance[c] + rank;
+                    kept++;
+                }
+            }
+            count = kept;
+        }
+
+        for (int c = 0; c < count; c++) {
+            // Путь страницы в памяти не хранится: страницы результатов всё равно загружаются из базы
+            result.add(new RankedPage(candidates[c], null, relevance[c]));
+        }
+    }
+
+    // Индекс первого элемента не меньше pageId в pageIds[from, size): шаг растёт вдвое,
+    // пока не перешагнёт искомое, затем двоичный поиск внутри последнего шага
+    private static int gallop(int[] pageIds, int from, int size, int pageId) {
+        if (from >= size || pageIds[from] >= pageId) {
+            return from;
+        }
+        int low = from;
+        int step = 1;
+        while (low + step < size && pageIds[low + step] < pageId) {
+            low += step;
+            step <<= 1;
+        }
+        int high = Math.min(low + step, size);
+        int index = Arrays.binarySearch(pageIds, low + 1, high, pageId);
+        return index >= 0 ? index : -index - 1;
+    }
+
+    // Строки одной леммы при загрузке: id страницы и ранг упакованы в long, чтобы отсортировать их одним массивом
+    private static final class LoadBuffer {
+        private long[] entries = new long[4];
+        private int size;
+
+        void add(int pageId, float rank) {
+            if (size == entries.length) {
+                entries = Arrays.copyOf(entries, size * 2);
+            }
+            entries[size++] = ((long) pageId << 32) | (Float.floatToIntBits(rank) & 0xFFFFFFFFL);
+        }
+
+        PostingList toPostingList() {
+            Arrays.sort(entries, 0, size);
+            int[] pageIds = new int[size];
+            float[] ranks = new float[size];
+            int count = 0;
+            for (int i = 0; i < size; i++) {
+                int pageId = (int) (entries[i] >>> 32);
+                if (count > 0 && pageIds[count - 1] == pageId) {
+                    continue;
+                }
+                pageIds[count] = pageId;
+                ranks[count] = Float.intBitsToFloat((int) entries[i]);
+                count++;
+            }
+            return new PostingList(Arrays.copyOf(pageIds, count), Arrays.copyOf(ranks, count));
+        }
+    }
+}
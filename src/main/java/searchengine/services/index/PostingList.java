@@ -0,0 +1,135 @@
+package searchengine.services.index;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Страницы одной леммы: id по возрастанию и ранги в параллельных массивах.
+// Читатели берут неизменяемый снимок без блокировок. Запись добавляет элемент за границей
+// уже опубликованных снимков и публикует новый; вставка не в конец копирует массивы.
+final class PostingList {
+    private static final int INITIAL_CAPACITY = 4;
+
+    static final class Snapshot {
+        // Плотный массив рангов строится, когда снимок прочитан столько раз: у растущего списка снимок
+        // заменяется при каждом добавлении, и строить массив для него на каждый запрос дороже галопирования
+        static final int DENSE_AFTER_READS = 3;
+        private static final float[] NOT_DENSE = new float[0];
+
+        final int[] pageIds;
+        final float[] ranks;
+        final int size;
+        private final AtomicInteger reads = new AtomicInteger();
+        // Для плотных списков — ранги по (id страницы - первый id), NaN для отсутствующих страниц.
+        // Публикуется одной volatile-записью после заполнения: поток, увидевший массив, видит и его содержимое
+        private volatile float[] denseRanks;
+
+        Snapshot(int[] pageIds, float[] ranks, int size) {
+            this.pageIds = pageIds;
+            this.ranks = ranks;
+            this.size = size;
+        }
+
+        int firstPageId() {
+            return pageIds[0];
+        }
+
+        // null, если страницы списка занимают меньше половины диапазона своих id
+        // или снимок ещё не прочитан DENSE_AFTER_READS раз
+        float[] denseRanks() {
+            float[] dense = denseRanks;
+            if (dense == null) {
+                if (reads.incrementAndGet() < DENSE_AFTER_READS) {
+                    return null;
+                }
+                // Гонка двух потоков безвредна: оба построят и опубликуют одинаковые массивы
+                float[] built = buildDenseRanks();
+                dense = built != null ? built : NOT_DENSE;
+                denseRanks = dense;
+            }
+            return dense == NOT_DENSE ? null : dense;
+        }
+
+        private float[] buildDenseRanks() {
+            if (size == 0) {
+                return null;
+            }
+            long range = (long) pageIds[size - 1] - pageIds[0] + 1;
+            if (range > (long) size * 2) {
+                return null;
+            }
+            float[] dense = new float[(int) range];
+            Arrays.fill(dense, Float.NaN);
+            for (int i = 0; i < size; i++) {
+                dense[pageIds[i] - pageIds[0]] = ranks[i];
+            }
+            return dense;
+        }
+    }
+
+    private volatile Snapshot snapshot;
+
+    PostingList() {
+        snapshot = new Snapshot(new int[INITIAL_CAPACITY], new float[INITIAL_CAPACITY], 0);
+    }
+
+    // Из отсортированных массивов, собранных при загрузке индекса
+    PostingList(int[] pageIds, float[] ranks) {
+        snapshot = new Snapshot(pageIds, ranks, pageIds.length);
+    }
+
+    Snapshot snapshot() {
+        return snapshot;
+    }
+
+    // Повторное добавление той же страницы игнорируется: строки могут прийти и при загрузке, и из записи
+    synchronized void add(int pageId, float rank) {
+        Snapshot current = snapshot;
+        int size = current.size;
+        int[] pageIds = current.pageIds;
+        float[] ranks = current.ranks;
+
+        if (size > 0 && pageIds[size - 1] >= pageId) {
+            int index = Arrays.binarySearch(pageIds, 0, size, pageId);
+            if (index >= 0) {
+                return;
+            }
+            int insertAt = -index - 1;
+            int capacity = size == pageIds.length ? size * 2 : pageIds.length;
+            int[] newPageIds = new int[capacity];
+            float[] newRanks = new float[capacity];
+            System.arraycopy(pageIds, 0, newPageIds, 0, insertAt);
+            System.arraycopy(ranks, 0, newRanks, 0, insertAt);
+            newPageIds[insertAt] = pageId;
+            newRanks[insertAt] = rank;
+            System.arraycopy(pageIds, insertAt, newPageIds, insertAt + 1, size - insertAt);
+            System.arraycopy(ranks, insertAt, newRanks, insertAt + 1, size - insertAt);
+            snapshot = new Snapshot(newPageIds, newRanks, size + 1);
+            return;
+        }
+
+        if (size == pageIds.length) {
+            pageIds = Arrays.copyOf(pageIds, Math.max(INITIAL_CAPACITY, size * 2));
+            ranks = Arrays.copyOf(ranks, pageIds.length);
+        }
+        pageIds[size] = pageId;
+        ranks[size] = rank;
+        snapshot = new Snapshot(pageIds, ranks, size + 1);
+    }
+
+    // Удаление копирует массивы: опубликованные снимки не меняются
+    synchronized void remove(int pageId) {
+        Snapshot current = snapshot;
+        int index = Arrays.binarySearch(current.pageIds, 0, current.size, pageId);
+        if (index < 0) {
+            return;
+        }
+        int size = current.size - 1;
+        int[] newPageIds = new int[Math.max(INITIAL_CAPACITY, current.pageIds.length)];
+        float[] newRanks = new float[newPageIds.length];
+        System.arraycopy(current.pageIds, 0, newPageIds, 0, index);
+        System.arraycopy(current.ranks, 0, newRanks, 0, index);
+        System.arraycopy(current.pageIds, index + 1, newPageIds, index, size - index);
+        System.arraycopy(current.ranks, index + 1, newRanks, index, size - index);
+        snapshot = new Snapshot(newPageIds, newRanks, size);
+    }
+}
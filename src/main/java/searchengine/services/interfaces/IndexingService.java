@@ -1,8 +1,10 @@
 package searchengine.services.interfaces;
 
 public interface IndexingService {
-    boolean startIndexing();
+    boolean startIndexing(boolean resume);
     boolean stopIndexing();
     boolean indexPage(String url);
+    // Индексация запущена: удаляются старые данные или идёт обход
+    boolean isIndexing();
 }
 
@@ -0,0 +1,63 @@
+package searchengine.task;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Фильтр Блума для очень больших сайтов: фиксированный объём памяти ценой редких ложных срабатываний
+// (новый адрес может быть ошибочно сочтён посещённым и не будет проиндексирован)
+public class BloomVisitedSet implements VisitedUrlSet {
+
+    private final AtomicLongArray bits;
+    private final long bitCount;
+    private final int hashCount;
+    private final AtomicLong size = new AtomicLong();
+
+    public BloomVisitedSet(long expectedUrls, double falsePositiveRate) {
+        long expected = Math.max(1, expectedUrls);
+        double rate = Math.min(0.5, Math.max(1e-9, falsePositiveRate));
+        long optimalBits = (long) Math.ceil(-expected * Math.log(rate) / (Math.log(2) * Math.log(2)));
+        int words = (int) Math.min(Integer.MAX_VALUE - 8, Math.max(1, (optimalBits + 63) / 64));
+
+        this.bits = new AtomicLongArray(words);
+        this.bitCount = (long) words * 64;
+        this.hashCount = Math.max(1, (int) Math.round((double) bitCount / expected * Math.log(2)));
+    }
+
+    @Override
+    public boolean add(CharSequence url) {
+        long fingerprint = VisitedUrlSet.fingerprint(url);
+        int hash1 = (int) fingerprint;
+        int hash2 = (int) (fingerprint >>> 32);
+
+        boolean added = false;
+        for (int i = 1; i <= hashCount; i++) {
+            long combined = (hash1 + (long) i * hash2) & Long.MAX_VALUE;
+            if (setBit(combined % bitCount)) {
+                added = true;
+            }
+        }
+        if (added) {
+            size.incrementAndGet();
+        }
+        return added;
+    }
+
+    @Override
+    public long size() {
+        return size.get();
+    }
+
+    private boolean setBit(long bitIndex) {
+        int word = (int) (bitIndex >>> 6);
+        long mask = 1L << bitIndex;
+        while (true) {
+            long current = bits.get(word);
+            if ((current & mask) != 0) {
+                return false;
+            }
+            if (bits.compareAndSet(word, current, current | mask)) {
+                return true;
+            }
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package searchengine.task;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+// Разобранный адрес страницы: схема, хост, порт, путь без запроса и фрагмента
+// и глубина пути относительно корня сайта. Строка адреса собирается один раз при разборе.
+@Getter
+@RequiredArgsConstructor
+public class CanonicalUrl {
+    private final String scheme;
+    private final String host;
+    private final int port;
+    private final String path;
+    private final int depth;
+    private final String url;
+
+    @Override
+    public String toString() {
+        return url;
+    }
+}
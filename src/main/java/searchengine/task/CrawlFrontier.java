@@ -0,0 +1,135 @@
+package searchengine.task;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.nio.file.Path;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+// Ограниченная очередь обхода в ширину, общая для всех сайтов.
+// Для каждого сайта считаются адреса в очереди и в обработке: когда их не остаётся, сайт обойдён.
+// Адреса, не поместившиеся в очередь, уходят в FrontierSpill и возвращаются в очередь по мере её освобождения.
+@Slf4j
+public class CrawlFrontier {
+
+    private final BlockingQueue<FrontierEntry> queue;
+    private final ConcurrentHashMap<String, AtomicInteger> pendingBySite = new ConcurrentHashMap<>();
+    private final AtomicInteger totalPending = new AtomicInteger();
+    private final int capacity;
+    private final FrontierSpill spill;
+    private final AtomicBoolean stopped = new AtomicBoolean(false);
+    private final Set<String> finishedSites = ConcurrentHashMap.newKeySet();
+    private final FrontierJournal journal;
+    private final Consumer<String> onSiteFinished;
+
+    public CrawlFrontier(int capacity, FrontierJournal journal, Path spillDirectory,
+                         Consumer<String> onSiteFinished) {
+        this.capacity = Math.max(1, capacity);
+        this.queue = new LinkedBlockingQueue<>(this.capacity);
+        this.spill = new FrontierSpill(spillDirectory);
+        this.journal = journal;
+        this.onSiteFinished = onSiteFinished;
+    }
+
+    public void offer(FrontierEntry entry) {
+        journal.recordQueued(entry);
+        enqueue(entry);
+    }
+
+    // Возвращает в очередь адрес из журнала; повторно в журнал он не пишется
+    public void restore(FrontierEntry entry) {
+        enqueue(entry);
+    }
+
+    // Пока в файле переполнения есть адреса, новые пишутся туда же, чтобы сохранить порядок обхода в ширину
+    private void enqueue(FrontierEntry entry) {
+        AtomicInteger sitePending = pendingBySite.computeIfAbsent(entry.getSiteUrl(), url -> new AtomicInteger());
+        sitePending.incrementAndGet();
+        totalPending.incrementAndGet();
+
+        if (stopped.get()) {
+            release(entry);
+            return;
+        }
+        if (spill.size() > 0 || !queue.offer(entry)) {
+            spill.append(entry);
+        }
+    }
+
+    public FrontierEntry poll(long timeout, TimeUnit unit) throws InterruptedException {
+        refill();
+        return queue.poll(timeout, unit);
+    }
+
+    // Когда очередь освободилась наполовину, в неё возвращаются адреса из файла переполнения
+    private void refill() {
+        int free = queue.remainingCapacity();
+        if (free < capacity / 2 || spill.size() == 0) {
+            return;
+        }
+        for (FrontierEntry entry : spill.take(free)) {
+            if (!queue.offer(entry)) {
+                spill.append(entry);
+            }
+        }
+    }
+
+    // Вызывается после обработки адреса, когда все найденные на странице ссылки уже поставлены в очередь
+    public void complete(FrontierEntry entry) {
+        journal.recordDone(entry);
+        release(entry);
+    }
+
+    // Адрес не обработан из-за остановки: в журнале он остаётся в очереди и будет повторён при продолжении обхода
+    public void discard(FrontierEntry entry) {
+        release(entry);
+    }
+
+    private void release(FrontierEntry entry) {
+        AtomicInteger sitePending = pendingBySite.get(entry.getSiteUrl());
+        boolean siteFinished = sitePending != null && sitePending.decrementAndGet() == 0;
+        totalPending.decrementAndGet();
+
+        if (siteFinished && !stopped.get()) {
+            log.info("Обход сайта завершён: {}", entry.getSiteUrl());
+            finishedSites.add(entry.getSiteUrl());
+            journal.finish(entry.getSiteUrl());
+            onSiteFinished.accept(entry.getSiteUrl());
+        }
+    }
+
+    // Адреса в файле переполнения тоже считаются ожидающими
+    public boolean isFinished() {
+        return totalPending.get() == 0;
+    }
+
+    public boolean isSiteFinished(String siteUrl) {
+        return finishedSites.contains(siteUrl);
+    }
+
+    // Останавливает обход: очередь очищается, рабочие потоки завершаются после текущей страницы.
+    // Журнал сохраняет неразобранные адреса, поэтому обход можно продолжить
+    public void stop() {
+        stopped.set(true);
+        queue.clear();
+        spill.clear();
+    }
+
+    public boolean isStopped() {
+        return stopped.get();
+    }
+
+    public int size() {
+        return (int) Math.min(Integer.MAX_VALUE, queue.size() + spill.size());
+    }
+
+    public void close() {
+        spill.close();
+    }
+}
@@ -0,0 +1,78 @@
+package searchengine.task;
+
+// Точное множество 64-битных отпечатков адресов: открытая адресация по массивам long,
+// разбитая на сегменты с собственными блокировками, чтобы потоки не ждали друг друга
+public class FingerprintVisitedSet implements VisitedUrlSet {
+    private static final int SEGMENT_BITS = 6;
+    private static final int INITIAL_CAPACITY = 256;
+
+    private final Segment[] segments = new Segment[1 << SEGMENT_BITS];
+
+    public FingerprintVisitedSet() {
+        for (int i = 0; i < segments.length; i++) {
+            segments[i] = new Segment();
+        }
+    }
+
+    @Override
+    public boolean add(CharSequence url) {
+        long fingerprint = VisitedUrlSet.fingerprint(url);
+        // 0 обозначает пустую ячейку таблицы
+        if (fingerprint == 0) {
+            fingerprint = 1;
+        }
+        return segments[(int) (fingerprint >>> (64 - SEGMENT_BITS))].add(fingerprint);
+    }
+
+    @Override
+    public long size() {
+        long size = 0;
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    private static class Segment {
+        private long[] table = new long[INITIAL_CAPACITY];
+        private int size;
+
+        synchronized boolean add(long fingerprint) {
+            if (!insert(table, fingerprint)) {
+                return false;
+            }
+            size++;
+            if (size * 2 > table.length) {
+                resize();
+            }
+            return true;
+        }
+
+        synchronized int size() {
+            return size;
+        }
+
+        private static boolean insert(long[] table, long fingerprint) {
+            int mask = table.length - 1;
+            int index = (int) fingerprint & mask;
+            while (table[index] != 0) {
+                if (table[index] == fingerprint) {
+                    return false;
+                }
+                index = (index + 1) & mask;
+            }
+            table[index] = fingerprint;
+            return true;
+        }
+
+        private void resize() {
+            long[] resized = new long[table.length * 2];
+            for (long fingerprint : table) {
+                if (fingerprint != 0) {
+                    insert(resized, fingerprint);
+                }
+            }
+            table = resized;
+        }
+    }
+}
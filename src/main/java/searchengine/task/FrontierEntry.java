@@ -0,0 +1,23 @@
+package searchengine.task;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+// Элемент очереди обхода: только адрес страницы, глубина и сайт, без загруженного документа
+@Getter
+@AllArgsConstructor
+public class FrontierEntry {
+    private final String url;
+    private final int depth;
+    private final String siteUrl;
+    // Адрес восстановлен из журнала: страница могла быть записана в базу до остановки обхода
+    private final boolean restored;
+
+    public FrontierEntry(String url, int depth, String siteUrl) {
+        this(url, depth, siteUrl, false);
+    }
+
+    public boolean isRoot() {
+        return depth == 0 && url.equals(siteUrl);
+    }
+}
@@ -0,0 +1,364 @@
+package searchengine.task;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+// Журнал очереди обхода: для каждого сайта ведётся файл, в который дописываются
+// поставленные в очередь (Q) и обработанные (D) адреса. Периодически журнал сбрасывается на диск,
+// а при разрастании сжимается до посещённых (V) и ожидающих (Q) адресов.
+// Отметка D пишется только при сбросе журнала, после записи буферов индекса (beforeCheckpoint):
+// адрес, отмеченный обработанным, при продолжении обхода не повторяется, и его данные уже должны быть в базе.
+@Slf4j
+public class FrontierJournal implements Closeable {
+    private static final String QUEUED = "Q";
+    private static final String DONE = "D";
+    private static final String VISITED = "V";
+
+    private final Path directory;
+    private final int compactThreshold;
+    private final Runnable beforeCheckpoint;
+    private final Map<String, SiteJournal> journals = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService checkpointer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "frontier-checkpoint");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public FrontierJournal(Path directory, long checkpointIntervalSeconds, int compactThreshold,
+                           Runnable beforeCheckpoint) {
+        this.directory = directory;
+        this.compactThreshold = compactThreshold;
+        this.beforeCheckpoint = beforeCheckpoint;
+        long interval = Math.max(1, checkpointIntervalSeconds);
+        checkpointer.scheduleWithFixedDelay(this::checkpoint, interval, interval, TimeUnit.SECONDS);
+    }
+
+    public static boolean hasCheckpoint(Path directory, String siteUrl) {
+        Path file = fileFor(directory, siteUrl);
+        try {
+            return Files.exists(file) && Files.size(file) > 0;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    // Новый обход сайта: прежний журнал отбрасывается
+    public void start(String siteUrl) throws IOException {
+        Files.createDirectories(directory);
+        Path file = fileFor(directory, siteUrl);
+        Files.deleteIfExists(file);
+        journals.put(siteUrl, new SiteJournal(file));
+    }
+
+    // Восстанавливает обход из журнала: посещённые адреса передаются в onVisited, адреса, которые стояли
+    // в очереди и не были обработаны, — в onPending. Журнал читается дважды: первый проход собирает
+    // отпечатки ожидающих адресов, второй выдаёт их записи, поэтому в памяти не держатся строки адресов.
+    // Возвращает число ожидающих адресов
+    public int restore(String siteUrl, Consumer<String> onVisited, Consumer<FrontierEntry> onPending)
+            throws IOException {
+        Path file = fileFor(directory, siteUrl);
+        FingerprintSet pending = replayPending(file, onVisited);
+
+        int restored = 0;
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] parts = line.split("\t", 3);
+                if (QUEUED.equals(parts[0]) && parts.length == 3
+                        && pending.remove(VisitedUrlSet.fingerprint(parts[2]))) {
+                    onPending.accept(new FrontierEntry(parts[2], Integer.parseInt(parts[1]), siteUrl, true));
+                    restored++;
+                }
+            }
+        }
+
+        journals.put(siteUrl, new SiteJournal(file));
+        log.info("Восстановлено из журнала {}: {} адресов в очереди", file, restored);
+        return restored;
+    }
+
+    // Проигрывает журнал и возвращает отпечатки адресов, которые стоят в очереди и не обработаны
+    private static FingerprintSet replayPending(Path file, Consumer<String> onVisited) throws IOException {
+        FingerprintSet pending = new FingerprintSet();
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] parts = line.split("\t", 3);
+                switch (parts[0]) {
+                    case QUEUED -> {
+                        if (parts.length == 3) {
+                            pending.add(VisitedUrlSet.fingerprint(parts[2]));
+                            onVisited.accept(parts[2]);
+                        }
+                    }
+                    case DONE -> {
+                        if (parts.length == 2) {
+                            pending.remove(VisitedUrlSet.fingerprint(parts[1]));
+                        }
+                    }
+                    case VISITED -> {
+                        if (parts.length == 2) {
+                            onVisited.accept(parts[1]);
+                        }
+                    }
+                    default -> log.warn("Повреждённая запись журнала {}: {}", file, line);
+                }
+            }
+        }
+        return pending;
+    }
+
+    public void recordQueued(FrontierEntry entry) {
+        SiteJournal journal = journals.get(entry.getSiteUrl());
+        if (journal != null && isWritable(entry.getUrl())) {
+            journal.queued(entry);
+        }
+    }
+
+    public void recordDone(FrontierEntry entry) {
+        SiteJournal journal = journals.get(entry.getSiteUrl());
+        if (journal != null && isWritable(entry.getUrl())) {
+            journal.done(entry);
+        }
+    }
+
+    // Обход сайта завершён полностью — продолжать нечего, журнал удаляется
+    public void finish(String siteUrl) {
+        SiteJournal journal = journals.remove(siteUrl);
+        if (journal != null) {
+            journal.delete();
+        }
+    }
+
+    // Отметки D забираются до записи буферов индекса: всё, что отмечено к этому моменту, уже лежит в буферах
+    // и будет записано. Если запись не удалась, отметки не пишутся, и адреса повторятся при продолжении обхода
+    public synchronized void checkpoint() {
+        Map<SiteJournal, List<String>> completed = new HashMap<>();
+        for (SiteJournal journal : journals.values()) {
+            completed.put(journal, journal.takeCompleted());
+        }
+        try {
+            beforeCheckpoint.run();
+        } catch (RuntimeException e) {
+            log.error("Ошибка записи буферов индекса перед сохранением журнала: {}", e.getMessage());
+            completed.clear();
+        }
+        for (SiteJournal journal : journals.values()) {
+            journal.checkpoint(completed.getOrDefault(journal, List.of()));
+        }
+    }
+
+    @Override
+    public void close() {
+        checkpointer.shutdownNow();
+        checkpoint();
+        for (SiteJournal journal : journals.values()) {
+            journal.closeWriter();
+        }
+        journals.clear();
+    }
+
+    private static Path fileFor(Path directory, String siteUrl) {
+        return directory.resolve(siteUrl.replaceAll("[^A-Za-z0-9.-]", "_") + ".journal");
+    }
+
+    private boolean isWritable(String url) {
+        return url.indexOf('\n') < 0 && url.indexOf('\r') < 0 && url.indexOf('\t') < 0;
+    }
+
+    private class SiteJournal {
+        private final Path file;
+        // Обработанные адреса, ещё не записанные в журнал
+        private List<String> completed = new ArrayList<>();
+        private FileOutputStream output;
+        private Writer writer;
+        private int linesSinceCompaction;
+
+        SiteJournal(Path file) throws IOException {
+            this.file = file;
+            openWriter();
+        }
+
+        synchronized void queued(FrontierEntry entry) {
+            append(QUEUED + "\t" + entry.getDepth() + "\t" + entry.getUrl());
+        }
+
+        synchronized void done(FrontierEntry entry) {
+            completed.add(entry.getUrl());
+        }
+
+        synchronized List<String> takeCompleted() {
+            List<String> taken = completed;
+            completed = new ArrayList<>();
+            return taken;
+        }
+
+        synchronized void checkpoint(List<String> done) {
+            if (writer == null) {
+                return;
+            }
+            for (String url : done) {
+                append(DONE + "\t" + url);
+            }
+            try {
+                if (linesSinceCompaction >= compactThreshold) {
+                    compact();
+                }
+                writer.flush();
+                output.getChannel().force(false);
+            } catch (IOException e) {
+                log.error("Ошибка сохранения журнала {}: {}", file, e.getMessage());
+            }
+        }
+
+        synchronized void delete() {
+            closeWriter();
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                log.warn("Не удалось удалить журнал {}: {}", file, e.getMessage());
+            }
+        }
+
+        synchronized void closeWriter() {
+            if (writer == null) {
+                return;
+            }
+            try {
+                writer.close();
+            } catch (IOException e) {
+                log.warn("Ошибка закрытия журнала {}: {}", file, e.getMessage());
+            }
+            writer = null;
+            output = null;
+        }
+
+        private void append(String line) {
+            if (writer == null) {
+                return;
+            }
+            try {
+                writer.write(line);
+                writer.write('\n');
+                linesSinceCompaction++;
+            } catch (IOException e) {
+                log.error("Ошибка записи в журнал {}: {}", file, e.getMessage());
+            }
+        }
+
+        // Переписывает журнал: обработанные адреса сворачиваются в V, ожидающие остаются Q.
+        // Ожидающие адреса берутся из самого журнала, а не из памяти
+        private void compact() throws IOException {
+            closeWriter();
+            Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+            FingerprintSet pending = replayPending(file, url -> { });
+            int queued = 0;
+
+            try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8);
+                 BufferedWriter out = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    String[] parts = line.split("\t", 3);
+                    if (QUEUED.equals(parts[0]) && parts.length == 3) {
+                        if (pending.remove(VisitedUrlSet.fingerprint(parts[2]))) {
+                            out.write(line);
+                            queued++;
+                        } else {
+                            out.write(VISITED + "\t" + parts[2]);
+                        }
+                        out.newLine();
+                    } else if (VISITED.equals(parts[0])) {
+                        out.write(line);
+                        out.newLine();
+                    }
+                }
+            }
+
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            linesSinceCompaction = 0;
+            openWriter();
+            log.info("Журнал {} сжат, адресов в очереди: {}", file, queued);
+        }
+
+        private void openWriter() throws IOException {
+            output = new FileOutputStream(file.toFile(), true);
+            writer = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8));
+        }
+    }
+
+    // Множество 64-битных отпечатков с удалением: открытая адресация со сдвигом при удалении.
+    // Нужно только на время проигрывания журнала
+    private static class FingerprintSet {
+        private long[] table = new long[256];
+        private int size;
+
+        void add(long fingerprint) {
+            fingerprint = nonZero(fingerprint);
+            int index = find(table, fingerprint);
+            if (table[index] == fingerprint) {
+                return;
+            }
+            table[index] = fingerprint;
+            if (++size * 2 > table.length) {
+                resize();
+            }
+        }
+
+        boolean remove(long fingerprint) {
+            fingerprint = nonZero(fingerprint);
+            int mask = table.length - 1;
+            int index = find(table, fingerprint);
+            if (table[index] != fingerprint) {
+                return false;
+            }
+            // Сдвигает назад элементы цепочки, чтобы в ней не осталось пустой ячейки
+            int next = (index + 1) & mask;
+            while (table[next] != 0) {
+                int home = (int) table[next] & mask;
+                if (((next - home) & mask) >= ((next - index) & mask)) {
+                    table[index] = table[next];
+                    index = next;
+                }
+                next = (next + 1) & mask;
+            }
+            table[index] = 0;
+            size--;
+            return true;
+        }
+
+        // 0 обозначает пустую ячейку таблицы
+        private static long nonZero(long fingerprint) {
+            return fingerprint == 0 ? 1 : fingerprint;
+        }
+
+        private static int find(long[] table, long fingerprint) {
+            int mask = table.length - 1;
+            int index = (int) fingerprint & mask;
+            while (table[index] != 0 && table[index] != fingerprint) {
+                index = (index + 1) & mask;
+            }
+            return index;
+        }
+
+        private void resize() {
+            long[] resized = new long[table.length * 2];
+            for (long fingerprint : table) {
+                if (fingerprint != 0) {
+                    resized[find(resized, fingerprint)] = fingerprint;
+                }
+            }
+            table = resized;
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package searchengine.task;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+// Переполнение очереди обхода: адреса, не поместившиеся в очередь, дописываются во временный файл
+// и читаются обратно по мере её освобождения. После сбоя файл не нужен — эти адреса есть в журнале как Q.
+// Если файл недоступен, адреса остаются в памяти: ссылки не теряются ни в каком случае.
+@Slf4j
+public class FrontierSpill implements Closeable {
+    private static final String RESTORED = "R";
+    private static final String NEW = "N";
+
+    private final Path directory;
+    private final Deque<FrontierEntry> inMemory = new ArrayDeque<>();
+    private Path file;
+    private BufferedWriter writer;
+    private BufferedReader reader;
+    // Записано в файл и ещё не прочитано
+    private long onDisk;
+
+    public FrontierSpill(Path directory) {
+        this.directory = directory;
+    }
+
+    public synchronized void append(FrontierEntry entry) {
+        if (isWritable(entry)) {
+            try {
+                openWriter();
+                writer.write(entry.getDepth() + "\t" + (entry.isRestored() ? RESTORED : NEW) + "\t"
+                        + entry.getSiteUrl() + "\t" + entry.getUrl());
+                writer.write('\n');
+                onDisk++;
+                return;
+            } catch (IOException e) {
+                log.error("Ошибка записи переполнения очереди обхода {}: {}", file, e.getMessage());
+            }
+        }
+        inMemory.addLast(entry);
+    }
+
+    // Возвращает до max адресов в порядке записи
+    public synchronized List<FrontierEntry> take(int max) {
+        List<FrontierEntry> entries = new ArrayList<>(Math.min(max, 1_024));
+        while (entries.size() < max && !inMemory.isEmpty()) {
+            entries.add(inMemory.pollFirst());
+        }
+        if (onDisk == 0) {
+            return entries;
+        }
+
+        try {
+            writer.flush();
+            if (reader == null) {
+                reader = Files.newBufferedReader(file, StandardCharsets.UTF_8);
+            }
+            String line;
+            while (entries.size() < max && onDisk > 0 && (line = reader.readLine()) != null) {
+                onDisk--;
+                String[] parts = line.split("\t", 4);
+                if (parts.length == 4) {
+                    entries.add(new FrontierEntry(parts[3], Integer.parseInt(parts[0]), parts[2],
+                            RESTORED.equals(parts[1])));
+                } else {
+                    log.warn("Повреждённая запись переполнения очереди обхода {}: {}", file, line);
+                }
+            }
+            if (onDisk == 0) {
+                // Файл прочитан целиком — следующее переполнение начнётся с пустого файла
+                deleteFile();
+            }
+        } catch (IOException e) {
+            log.error("Ошибка чтения переполнения очереди обхода {}: {}", file, e.getMessage());
+        }
+        return entries;
+    }
+
+    public synchronized long size() {
+        return onDisk + inMemory.size();
+    }
+
+    public synchronized void clear() {
+        inMemory.clear();
+        deleteFile();
+    }
+
+    @Override
+    public void close() {
+        clear();
+    }
+
+    private void openWriter() throws IOException {
+        if (writer != null) {
+            return;
+        }
+        Files.createDirectories(directory);
+        file = Files.createTempFile(directory, "frontier-", ".spill");
+        writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8);
+        log.info("Очередь обхода заполнена, адреса временно записываются в {}", file);
+    }
+
+    private void deleteFile() {
+        onDisk = 0;
+        try {
+            if (reader != null) {
+                reader.close();
+            }
+            if (writer != null) {
+                writer.close();
+            }
+            if (file != null) {
+                Files.deleteIfExists(file);
+            }
+        } catch (IOException e) {
+            log.warn("Не удалось удалить файл переполнения очереди обхода {}: {}", file, e.getMessage());
+        }
+        reader = null;
+        writer = null;
+        file = null;
+    }
+
+    private boolean isWritable(FrontierEntry entry) {
+        String url = entry.getUrl();
+        return url.indexOf('\n') < 0 && url.indexOf('\r') < 0 && url.indexOf('\t') < 0;
+    }
+}
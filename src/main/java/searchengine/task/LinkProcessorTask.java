@@ -4,54 +4,36 @@ import lombok.RequiredArgsConstructor;
 import org.jsoup.nodes.Document;
 import org.jsoup.select.Elements;
 
-import java.net.URI;
-import java.net.URISyntaxException;
-import java.util.Collections;
-import java.util.Locale;
-import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Pattern;
 
 @RequiredArgsConstructor
 public class LinkProcessorTask {
-    private static final Set<String> visitedLinks = Collections.synchronizedSet(ConcurrentHashMap.newKeySet());
-    private static final Set<String> INVALID_EXTENSIONS = Set.of(
-            ".pdf", ".jpg", ".png", ".zip", ".docx", ".xlsx", ".gif", ".mp4", ".mp3", ".php", ".jpeg"
-    );
-    private final String baseDomain;
+    private final UrlCanonicalizer canonicalizer;
+    private final VisitedUrlSet visitedLinks;
 
     public Elements extractLinks(Document doc) {
         return doc.select("a[href]");
     }
 
-    public boolean shouldVisitLink(String linkHref) {
-        String normalizedLink = normalizeUrl(linkHref);
-        return isValidLink(normalizedLink) && visitedLinks.add(normalizedLink) && !isMainPage(normalizedLink);
+    // Разбирает адрес страницы, относительно которого разрешаются найденные на ней ссылки
+    public CanonicalUrl canonicalize(String url) {
+        return canonicalizer.canonicalize(url, null);
     }
 
-    private String normalizeUrl(String url) {
-        if (url == null || url.isEmpty()) {
-            return "";
-        }
-        try {
-            URI uri = new URI(url).normalize();
-            String scheme = uri.getScheme() != null ? uri.getScheme() : "http";
-            String host = uri.getHost();
-            String path = (uri.getPath() == null || uri.getPath().isEmpty()) ? "/" : uri.getPath();
-            return new URI(scheme, null, host, uri.getPort(), path, null, null).toString();
-        } catch (URISyntaxException e) {
-            return ""; // Возвращаем пустую строку для некорректных URL
+    // Возвращает ссылку в каноническом виде, если её нужно посетить, иначе null
+    public CanonicalUrl acceptLink(String linkHref, CanonicalUrl page) {
+        CanonicalUrl url = canonicalizer.canonicalize(linkHref, page);
+        if (url == null || !canonicalizer.isSiteLink(url) || canonicalizer.isMainPage(url)) {
+            return null;
         }
+        return visitedLinks.add(url.getUrl()) ? url : null;
     }
 
-    private boolean isMainPage(String url) {
-        try {
-            URI uri = new URI(url);
-            URI baseUri = new URI(baseDomain);
-            return normalizeDomain(uri.getHost()).equals(normalizeDomain(baseUri.getHost())) &&
-                    "/".equals(uri.getPath());
-        } catch (URISyntaxException e) {
-            return false;
+    // Отмечает адрес посещённым без проверок, например при восстановлении обхода из журнала
+    public void markVisited(String linkHref) {
+        CanonicalUrl url = canonicalizer.canonicalize(linkHref, null);
+        if (url != null) {
+            visitedLinks.add(url.getUrl());
         }
     }
 
@@ -66,43 +48,4 @@ public class LinkProcessorTask {
                 content.equals("<html><head></head><body></body></html>") ||
                 !hasHtmlDoctype(content);
     }
-
-    public static void clearVisitedLinks() {
-        visitedLinks.clear();
-    }
-
-    public boolean isValidLink(String url) {
-        try {
-            URI uri = new URI(url);
-            String scheme = uri.getScheme();
-            String host = uri.getHost();
-            String path = uri.getPath();
-
-            if (scheme == null || (!scheme.equals("http") && !scheme.equals("https")) || host == null) {
-                return false;
-            }
-
-            if (!normalizeDomain(baseDomain).equals(normalizeDomain(host))) {
-                return false;
-            }
-
-            if (path != null) {
-                String lowerCasePath = path.toLowerCase(Locale.ROOT);
-                for (String ext : INVALID_EXTENSIONS) {
-                    if (lowerCasePath.endsWith(ext)) {
-                        return false;
-                    }
-                }
-            }
-            return true;
-        } catch (URISyntaxException e) {
-            return false;
-        }
-    }
-
-    private String normalizeDomain(String domain) {
-        if (domain == null) return "";
-        String[] parts = domain.split("\\.");
-        return parts.length > 2 ? parts[parts.length - 2] + "." + parts[parts.length - 1] : domain;
-    }
 }
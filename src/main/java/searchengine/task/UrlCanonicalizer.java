@@ -0,0 +1,269 @@
+package searchengine.task;
+
+import java.util.List;
+
+// Разбирает ссылку за один проход по строке, без java.net.URI и регулярных выражений.
+// Компоненты адреса сайта разбираются один раз в конструкторе и дальше только сравниваются.
+public class UrlCanonicalizer {
+    private static final List<String> INVALID_EXTENSIONS = List.of(
+            ".pdf", ".jpg", ".png", ".zip", ".docx", ".xlsx", ".gif", ".mp4", ".mp3", ".php", ".jpeg"
+    );
+    private static final String HTTP_PREFIX = "http://";
+    private static final String HTTPS_PREFIX = "https://";
+    private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+
+    private final String baseHost;
+    private final int baseDomainStart;
+    private final String basePath;
+
+    public UrlCanonicalizer(String siteUrl) {
+        CanonicalUrl base = canonicalize(siteUrl, null);
+        if (base == null) {
+            throw new IllegalArgumentException("Некорректный адрес сайта: " + siteUrl);
+        }
+        baseHost = base.getHost();
+        baseDomainStart = registeredDomainStart(baseHost);
+        // Путь сайта без завершающего слэша: "/" превращается в пустую строку
+        String path = base.getPath();
+        basePath = path.endsWith("/") ? path.substring(0, path.length() - 1) : path;
+    }
+
+    // Приводит ссылку к каноническому виду. Относительные ссылки разрешаются относительно страницы,
+    // на которой они найдены. Возвращает null для пустых ссылок, якорей и схем кроме http/https.
+    public CanonicalUrl canonicalize(String href, CanonicalUrl context) {
+        if (href == null) {
+            return null;
+        }
+        int start = 0;
+        int end = href.length();
+        while (start < end && href.charAt(start) <= ' ') start++;
+        while (end > start && href.charAt(end - 1) <= ' ') end--;
+        if (start == end || href.charAt(start) == '#') {
+            return null;
+        }
+
+        String scheme;
+        int authorityStart;
+        if (href.regionMatches(true, start, HTTP_PREFIX, 0, HTTP_PREFIX.length())) {
+            scheme = "http";
+            authorityStart = start + HTTP_PREFIX.length();
+        } else if (href.regionMatches(true, start, HTTPS_PREFIX, 0, HTTPS_PREFIX.length())) {
+            scheme = "https";
+            authorityStart = start + HTTPS_PREFIX.length();
+        } else if (href.startsWith("//", start)) {
+            if (context == null) return null;
+            scheme = context.getScheme();
+            authorityStart = start + 2;
+        } else if (hasScheme(href, start, end)) {
+            return null; // mailto:, javascript:, tel: и прочие схемы не обходим
+        } else {
+            if (context == null) return null;
+            int pathEnd = indexOfAny(href, start, end, "?#");
+            String path = resolveRelative(context.getPath(), href.substring(start, pathEnd));
+            return build(context.getScheme(), context.getHost(), context.getPort(), path);
+        }
+
+        int authorityEnd = indexOfAny(href, authorityStart, end, "/?#");
+        int hostStart = href.lastIndexOf('@', authorityEnd - 1) + 1;
+        if (hostStart < authorityStart) hostStart = authorityStart;
+        if (hostStart < authorityEnd && href.charAt(hostStart) == '[') {
+            return null; // IPv6-адреса в ссылках не поддерживаем
+        }
+        int portSeparator = href.lastIndexOf(':', authorityEnd - 1);
+        int hostEnd = portSeparator >= hostStart ? portSeparator : authorityEnd;
+        if (hostStart == hostEnd) {
+            return null;
+        }
+        int port = -1;
+        if (portSeparator >= hostStart && portSeparator + 1 < authorityEnd) {
+            port = parsePort(href, portSeparator + 1, authorityEnd);
+            if (port < 0) return null;
+            if (port == defaultPort(scheme)) port = -1;
+        }
+        String host = lowerCase(href, hostStart, hostEnd);
+
+        int pathEnd = indexOfAny(href, authorityEnd, end, "?#");
+        String path = authorityEnd == pathEnd ? "/" : normalizePath(href.substring(authorityEnd, pathEnd));
+        return build(scheme, host, port, path);
+    }
+
+    // Ссылка ведёт на тот же сайт (с точностью до поддомена) и не на файл
+    public boolean isSiteLink(CanonicalUrl url) {
+        return isSameRegisteredDomain(url.getHost()) && !hasInvalidExtension(url.getPath());
+    }
+
+    public boolean isMainPage(CanonicalUrl url) {
+        return "/".equals(url.getPath()) && isSameRegisteredDomain(url.getHost());
+    }
+
+    private CanonicalUrl build(String scheme, String host, int port, String path) {
+        StringBuilder url = new StringBuilder(scheme.length() + host.length() + path.length() + 9)
+                .append(scheme).append("://").append(host);
+        if (port != -1) {
+            url.append(':').append(port);
+        }
+        url.append(path);
+        return new CanonicalUrl(scheme, host, port, path, depthOf(path), url.toString());
+    }
+
+    // Число непустых сегментов пути после пути самого сайта
+    private int depthOf(String path) {
+        int from = basePath != null && !basePath.isEmpty() && path.startsWith(basePath) ? basePath.length() : 0;
+        int depth = 0;
+        for (int i = from; i < path.length() - 1; i++) {
+            if (path.charAt(i) == '/' && path.charAt(i + 1) != '/') {
+                depth++;
+            }
+        }
+        return depth;
+    }
+
+    // Сравнивает два последних уровня домена без выделения подстрок
+    private boolean isSameRegisteredDomain(String host) {
+        int domainStart = registeredDomainStart(host);
+        int length = host.length() - domainStart;
+        return length == baseHost.length() - baseDomainStart
+                && host.regionMatches(domainStart, baseHost, baseDomainStart, length);
+    }
+
+    private static int registeredDomainStart(String host) {
+        int lastDot = host.lastIndexOf('.');
+        if (lastDot <= 0) {
+            return 0;
+        }
+        return host.lastIndexOf('.', lastDot - 1) + 1;
+    }
+
+    private static boolean hasInvalidExtension(String path) {
+        for (String ext : INVALID_EXTENSIONS) {
+            if (path.regionMatches(true, path.length() - ext.length(), ext, 0, ext.length())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Схема ссылки: буквы, цифры, '+', '-' или '.' перед первым ':' и до любого '/', '?', '#'
+    private static boolean hasScheme(String href, int start, int end) {
+        for (int i = start; i < end; i++) {
+            char c = href.charAt(i);
+            if (c == ':') {
+                return i > start;
+            }
+            boolean schemeChar = (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')
+                    || (i > start && ((c >= '0' && c <= '9') || c == '+' || c == '-' || c == '.'));
+            if (!schemeChar) {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    private static String resolveRelative(String contextPath, String relative) {
+        if (relative.isEmpty()) {
+            return contextPath;
+        }
+        if (relative.charAt(0) == '/') {
+            return normalizePath(relative);
+        }
+        int lastSlash = contextPath.lastIndexOf('/');
+        return normalizePath(contextPath.substring(0, lastSlash + 1) + relative);
+    }
+
+    // Убирает сегменты "." и ".." и кодирует символы, недопустимые в пути запроса
+    private static String normalizePath(String path) {
+        if (path.contains("/.")) {
+            path = removeDotSegments(path);
+        }
+        return encodeIllegalChars(path);
+    }
+
+    private static String removeDotSegments(String path) {
+        StringBuilder result = new StringBuilder(path.length());
+        int i = 0;
+        int length = path.length();
+        while (i < length) {
+            int next = path.indexOf('/', i + 1);
+            if (next < 0) next = length;
+            int segmentLength = next - i - 1;
+            boolean last = next == length;
+            if (segmentLength == 1 && path.charAt(i + 1) == '.') {
+                if (last) result.append('/');
+            } else if (segmentLength == 2 && path.charAt(i + 1) == '.' && path.charAt(i + 2) == '.') {
+                int cut = result.lastIndexOf("/");
+                result.setLength(Math.max(cut, 0));
+                if (last) result.append('/');
+            } else {
+                result.append(path, i, next);
+            }
+            i = next;
+        }
+        return result.length() == 0 ? "/" : result.toString();
+    }
+
+    private static String encodeIllegalChars(String path) {
+        int first = -1;
+        for (int i = 0; i < path.length(); i++) {
+            if (isIllegal(path.charAt(i))) {
+                first = i;
+                break;
+            }
+        }
+        if (first < 0) {
+            return path;
+        }
+        StringBuilder encoded = new StringBuilder(path.length() + 16).append(path, 0, first);
+        for (int i = first; i < path.length(); i++) {
+            char c = path.charAt(i);
+            if (isIllegal(c)) {
+                encoded.append('%').append(HEX[(c >> 4) & 0xF]).append(HEX[c & 0xF]);
+            } else {
+                encoded.append(c);
+            }
+        }
+        return encoded.toString();
+    }
+
+    private static boolean isIllegal(char c) {
+        return c <= ' ' || c == 0x7F || c == '"' || c == '<' || c == '>' || c == '\\'
+                || c == '^' || c == '`' || c == '{' || c == '|' || c == '}';
+    }
+
+    private static int indexOfAny(String s, int from, int end, String chars) {
+        for (int i = from; i < end; i++) {
+            if (chars.indexOf(s.charAt(i)) >= 0) {
+                return i;
+            }
+        }
+        return end;
+    }
+
+    private static int parsePort(String s, int from, int end) {
+        if (end - from > 5) return -1;
+        int port = 0;
+        for (int i = from; i < end; i++) {
+            char c = s.charAt(i);
+            if (c < '0' || c > '9') return -1;
+            port = port * 10 + (c - '0');
+        }
+        return port <= 65535 ? port : -1;
+    }
+
+    private static int defaultPort(String scheme) {
+        return "https".equals(scheme) ? 443 : 80;
+    }
+
+    private static String lowerCase(String s, int from, int end) {
+        for (int i = from; i < end; i++) {
+            char c = s.charAt(i);
+            if (c >= 'A' && c <= 'Z') {
+                char[] chars = s.substring(from, end).toCharArray();
+                for (int j = i - from; j < chars.length; j++) {
+                    if (chars[j] >= 'A' && chars[j] <= 'Z') chars[j] += 'a' - 'A';
+                }
+                return new String(chars);
+            }
+        }
+        return s.substring(from, end);
+    }
+}
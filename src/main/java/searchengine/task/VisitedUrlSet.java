@@ -0,0 +1,37 @@
+package searchengine.task;
+
+import searchengine.config.CrawlerSettings;
+
+// Множество посещённых адресов одного сайта
+public interface VisitedUrlSet {
+
+    // Возвращает true, если адрес встретился впервые
+    boolean add(CharSequence url);
+
+    long size();
+
+    static VisitedUrlSet create(CrawlerSettings.Visited settings) {
+        if (settings.getMode() == CrawlerSettings.VisitedMode.BLOOM) {
+            return new BloomVisitedSet(settings.getExpectedUrls(), settings.getFalsePositiveRate());
+        }
+        return new FingerprintVisitedSet();
+    }
+
+    // 64-битный отпечаток адреса (FNV-1a с финальным перемешиванием битов)
+    static long fingerprint(CharSequence url) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < url.length(); i++) {
+            char c = url.charAt(i);
+            hash ^= c & 0xff;
+            hash *= 0x100000001b3L;
+            hash ^= c >>> 8;
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -0,0 +1,296 @@
+package searchengine.task.pipeline;
+
+import lombok.extern.slf4j.Slf4j;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.springframework.transaction.UnexpectedRollbackException;
+import searchengine.config.CrawlerSettings;
+import searchengine.config.FakeConfig;
+import searchengine.constants.ErrorMessages;
+import searchengine.dto.indexing.FetchResult;
+import searchengine.dto.indexing.PageText;
+import searchengine.model.SiteEntity;
+import searchengine.services.SiteIndexingService;
+import searchengine.services.crud.SiteCRUDService;
+import searchengine.task.CanonicalUrl;
+import searchengine.task.CrawlFrontier;
+import searchengine.task.FrontierEntry;
+import searchengine.task.LinkProcessorTask;
+import searchengine.utils.HtmlLoaderUtil;
+import searchengine.utils.MorphCache;
+import searchengine.utils.PageProcessorUtil;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Конвейер индексации: загрузка -> разбор -> лемматизация -> запись в базу.
+// Стадии связаны ограниченными очередями и имеют отдельные потоки, поэтому сеть, процессор и база
+// работают одновременно. Стадия загрузки только выдаёт запросы планировщику хостов: ожидание слота хоста
+// не занимает потоков, а загруженная страница передаётся на разбор из обработчика завершения запроса.
+// Адрес считается обработанным в очереди обхода только после записи страницы,
+// а ссылки со страницы ставятся в очередь раньше — на стадии разбора.
+@Slf4j
+public class IndexingPipeline {
+    private final CrawlFrontier frontier;
+    private final Map<String, LinkProcessorTask> linkProcessors;
+    private final int maxDepth;
+    private final FakeConfig fakeConfig;
+    private final SiteCRUDService siteCRUDService;
+    private final PageProcessorUtil pageProcessorUtil;
+    private final HtmlLoaderUtil htmlLoaderUtil;
+    private final MorphCache morphCache;
+    private final long metricsIntervalSeconds;
+    // Ограничивает число выданных, но ещё не переданных на разбор запросов
+    private final Semaphore pendingFetches;
+
+    private final PipelineStage<FrontierEntry> fetchStage;
+    private final PipelineStage<PageJob> parseStage;
+    private final PipelineStage<PageJob> lemmatizeStage;
+    private final PipelineStage<PageJob> persistStage;
+    private final List<PipelineStage<?>> stages;
+
+    public IndexingPipeline(CrawlFrontier frontier, Map<String, LinkProcessorTask> linkProcessors, int maxDepth,
+                            FakeConfig fakeConfig, SiteCRUDService siteCRUDService,
+                            PageProcessorUtil pageProcessorUtil, HtmlLoaderUtil htmlLoaderUtil,
+                            MorphCache morphCache, CrawlerSettings crawlerSettings) {
+        this.frontier = frontier;
+        this.linkProcessors = linkProcessors;
+        this.maxDepth = maxDepth;
+        this.fakeConfig = fakeConfig;
+        this.siteCRUDService = siteCRUDService;
+        this.pageProcessorUtil = pageProcessorUtil;
+        this.htmlLoaderUtil = htmlLoaderUtil;
+        this.morphCache = morphCache;
+
+        CrawlerSettings.Pipeline settings = crawlerSettings.getPipeline();
+        this.metricsIntervalSeconds = settings.getMetricsIntervalSeconds();
+        int capacity = settings.getQueueCapacity();
+        this.pendingFetches = new Semaphore(Math.max(1, settings.getMaxPendingFetches()));
+
+        // Один поток выдаёт запросы; сами запросы выполняются в пуле HtmlLoaderUtil (crawler.fetch-threads)
+        fetchStage = new PipelineStage<>("fetch", 1,
+                frontier::poll, frontier::size, this::fetch, frontier::discard, frontier::complete);
+        parseStage = new PipelineStage<>("parse", settings.getParseThreads(), capacity,
+                this::parse, this::discard, this::complete);
+        lemmatizeStage = new PipelineStage<>("lemmatize", settings.getLemmatizeThreads(), capacity,
+                this::lemmatize, this::discard, this::complete);
+        persistStage = new PipelineStage<>("persist", settings.getPersistThreads(), capacity,
+                this::persist, this::discard, this::complete);
+        stages = List.of(fetchStage, parseStage, lemmatizeStage, persistStage);
+    }
+
+    public int threadCount() {
+        return stages.stream().mapToInt(PipelineStage::getThreads).sum();
+    }
+
+    // Запускает потоки всех стадий; результат завершается, когда обход закончен или остановлен
+    public CompletableFuture<Void> start(Executor executor) {
+        List<CompletableFuture<Void>> workers = new ArrayList<>();
+        for (PipelineStage<?> stage : stages) {
+            workers.addAll(stage.start(executor, frontier::isFinished, frontier::isStopped));
+        }
+
+        ScheduledExecutorService metricsTimer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "pipeline-metrics");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (metricsIntervalSeconds > 0) {
+            metricsTimer.scheduleAtFixedRate(this::logMetrics, metricsIntervalSeconds, metricsIntervalSeconds,
+                    TimeUnit.SECONDS);
+        }
+
+        return CompletableFuture.allOf(workers.toArray(new CompletableFuture[0]))
+                .whenComplete((ignored, e) -> {
+                    metricsTimer.shutdownNow();
+                    logMetrics();
+                });
+    }
+
+    private void logMetrics() {
+        StringBuilder line = new StringBuilder("Конвейер индексации:");
+        for (PipelineStage<?> stage : stages) {
+            line.append(' ').append(stage.report());
+        }
+        line.append(' ').append(morphCache.report());
+        log.info(line.toString());
+    }
+
+    // Не ждёт загрузки: запрос встаёт в очередь своего хоста, и поток сразу берёт следующий адрес.
+    // Ждёт только разрешения, если выдано max-pending-fetches запросов, — так очередь обхода не переливается
+    // целиком в очереди хостов
+    private void fetch(FrontierEntry entry) {
+        if (isStopped(entry.getSiteUrl())) {
+            frontier.discard(entry);
+            return;
+        }
+        if (!acquireFetchPermit()) {
+            frontier.discard(entry);
+            return;
+        }
+
+        CompletableFuture<FetchResult> request;
+        try {
+            request = htmlLoaderUtil.fetchAsync(entry.getUrl(), fakeConfig);
+        } catch (RuntimeException e) {
+            // Запрос не выдан: обработчик завершения не вызовется, разрешение возвращается здесь
+            pendingFetches.release();
+            log.error("Ошибка на стадии fetch: {}", e.getMessage());
+            frontier.complete(entry);
+            return;
+        }
+        request.whenComplete((fetchResult, e) -> {
+            try {
+                onFetched(entry, e == null ? fetchResult : null);
+            } catch (Exception ex) {
+                log.error("Ошибка на стадии fetch: {}", ex.getMessage());
+                frontier.complete(entry);
+            } finally {
+                pendingFetches.release();
+            }
+        });
+    }
+
+    private boolean acquireFetchPermit() {
+        try {
+            while (!pendingFetches.tryAcquire(200, TimeUnit.MILLISECONDS)) {
+                if (frontier.isStopped()) {
+                    return false;
+                }
+            }
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    // Выполняется в потоке, завершившем запрос; если очередь разбора заполнена, он ждёт места в ней
+    private void onFetched(FrontierEntry entry, FetchResult fetchResult) {
+        if (isStopped(entry.getSiteUrl())) {
+            frontier.discard(entry);
+            return;
+        }
+        if (fetchResult == null || !fetchResult.isSuccessful()) {
+            log.error("Failed to load document for URL: {}", entry.getUrl());
+            if (!entry.isRoot()) {
+                siteCRUDService.updateSiteError(siteCRUDService.getSiteByUrl(entry.getSiteUrl()),
+                        ErrorMessages.ERROR_LOAD_CHILD_PAGE);
+            }
+            frontier.complete(entry);
+            return;
+        }
+
+        PageJob job = new PageJob(entry);
+        job.setFetchResult(fetchResult);
+        parseStage.submit(job, frontier::isStopped);
+    }
+
+    // Ссылки ставятся в очередь обхода здесь, до того как страница уйдёт дальше по конвейеру
+    private void parse(PageJob job) {
+        FrontierEntry entry = job.getEntry();
+        LinkProcessorTask linkProcessor = linkProcessors.get(entry.getSiteUrl());
+        if (linkProcessor == null) {
+            frontier.complete(entry);
+            return;
+        }
+
+        FetchResult fetchResult = job.getFetchResult();
+        Document document = fetchResult.getDocument();
+        enqueueLinks(entry, linkProcessor, document.baseUri(), extractLinks(linkProcessor, document));
+
+        // Главная страница сайта в базу не сохраняется, с неё только собираются ссылки
+        if (entry.isRoot()) {
+            frontier.complete(entry);
+            return;
+        }
+
+        String content = fetchResult.getBody();
+        job.setFetchResult(null);
+        if (LinkProcessorTask.isEmptyPage(content)) {
+            log.info("Skipping empty page: {}", entry.getUrl());
+            frontier.complete(entry);
+            return;
+        }
+        job.setStatusCode(fetchResult.getStatusCode());
+        job.setContent(content);
+        job.setPageText(PageText.from(document));
+        lemmatizeStage.submit(job, frontier::isStopped);
+    }
+
+    private void lemmatize(PageJob job) {
+        job.setLemmas(pageProcessorUtil.countLemmas(job.getPageText().getText()));
+        persistStage.submit(job, frontier::isStopped);
+    }
+
+    private void persist(PageJob job) {
+        FrontierEntry entry = job.getEntry();
+        SiteEntity siteEntity = null;
+        try {
+            siteEntity = siteCRUDService.getSiteByUrl(entry.getSiteUrl());
+            pageProcessorUtil.savePage(entry.getUrl(), job.getStatusCode(), job.getContent(), job.getPageText(),
+                    job.getLemmas(), siteEntity, entry.isRestored());
+        } catch (UnexpectedRollbackException e) {
+            log.error("Transaction rollback occurred for page: {}", entry.getUrl());
+            if (siteEntity != null) {
+                siteCRUDService.updateSiteError(siteEntity, ErrorMessages.SITE_UNAVAILABLE);
+            }
+        } catch (Exception e) {
+            log.error("Failed to save page to database: " + entry.getUrl(), e);
+            if (siteEntity != null) {
+                siteCRUDService.updateSiteError(siteEntity, ErrorMessages.ERROR_SAVE_PAGE_TO_DATABASE);
+            }
+        }
+        frontier.complete(entry);
+    }
+
+    private List<String> extractLinks(LinkProcessorTask linkProcessor, Document document) {
+        List<String> links = new ArrayList<>();
+        for (Element link : linkProcessor.extractLinks(document)) {
+            links.add(link.attr("href"));
+        }
+        return links;
+    }
+
+    // Относительные ссылки разрешаются от базового адреса документа: он учитывает редиректы и тег <base>
+    private void enqueueLinks(FrontierEntry entry, LinkProcessorTask linkProcessor, String pageUrl, List<String> links) {
+        CanonicalUrl page = linkProcessor.canonicalize(pageUrl);
+        if (page == null) {
+            return;
+        }
+        for (String linkHref : links) {
+            if (isStopped(entry.getSiteUrl())) {
+                return;
+            }
+
+            CanonicalUrl link = linkProcessor.acceptLink(linkHref, page);
+            if (link == null || link.getDepth() > maxDepth) {
+                continue;
+            }
+
+            log.info("Queueing link at depth {}: {}", link.getDepth(), link.getUrl());
+            frontier.offer(new FrontierEntry(link.getUrl(), link.getDepth(), entry.getSiteUrl()));
+        }
+    }
+
+    private void discard(PageJob job) {
+        frontier.discard(job.getEntry());
+    }
+
+    private void complete(PageJob job) {
+        frontier.complete(job.getEntry());
+    }
+
+    private boolean isStopped(String siteUrl) {
+        AtomicBoolean stopFlag = SiteIndexingService.getStopFlagForSite(siteUrl);
+        return frontier.isStopped() || SiteIndexingService.isStopProcessing() || stopFlag == null || stopFlag.get();
+    }
+}
@@ -0,0 +1,25 @@
+package searchengine.task.pipeline;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.Setter;
+import searchengine.dto.indexing.FetchResult;
+import searchengine.dto.indexing.LemmaOccurrences;
+import searchengine.dto.indexing.PageText;
+import searchengine.task.FrontierEntry;
+
+import java.util.Map;
+
+// Страница, проходящая стадии конвейера. Каждая стадия заполняет свои поля
+// и освобождает то, что дальше не нужно: документ не переживает стадию разбора.
+@Getter
+@Setter
+@RequiredArgsConstructor
+public class PageJob {
+    private final FrontierEntry entry;
+    private FetchResult fetchResult;
+    private int statusCode;
+    private String content;
+    private PageText pageText;
+    private Map<String, LemmaOccurrences> lemmas;
+}
@@ -0,0 +1,150 @@
+package searchengine.task.pipeline;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.function.IntSupplier;
+
+// Стадия конвейера индексации: свои потоки, разбирающие ограниченную входную очередь.
+// Когда очередь заполнена, предыдущая стадия ждёт — так медленная стадия притормаживает весь конвейер.
+@Slf4j
+public class PipelineStage<T> {
+    private static final long POLL_TIMEOUT_MS = 200;
+
+    @FunctionalInterface
+    public interface Source<T> {
+        T poll(long timeout, TimeUnit unit) throws InterruptedException;
+    }
+
+    @Getter
+    private final String name;
+    @Getter
+    private final int threads;
+    private final BlockingQueue<T> queue;
+    private final Source<T> source;
+    private final IntSupplier backlog;
+    private final Consumer<T> handler;
+    // Элемент не обработан из-за остановки
+    private final Consumer<T> onDrop;
+    // Обработчик завершился исключением
+    private final Consumer<T> onError;
+
+    private final LongAdder processed = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder busyNanos = new LongAdder();
+    private final LongAdder waitNanos = new LongAdder();
+    private long lastReportNanos = System.nanoTime();
+
+    // Стадия со своей ограниченной очередью на входе
+    public PipelineStage(String name, int threads, int capacity,
+                         Consumer<T> handler, Consumer<T> onDrop, Consumer<T> onError) {
+        this.name = name;
+        this.threads = Math.max(1, threads);
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, capacity));
+        this.source = queue::poll;
+        this.backlog = queue::size;
+        this.handler = handler;
+        this.onDrop = onDrop;
+        this.onError = onError;
+    }
+
+    // Стадия, читающая из внешней очереди (например, из очереди обхода)
+    public PipelineStage(String name, int threads, Source<T> source, IntSupplier backlog,
+                         Consumer<T> handler, Consumer<T> onDrop, Consumer<T> onError) {
+        this.name = name;
+        this.threads = Math.max(1, threads);
+        this.queue = null;
+        this.source = source;
+        this.backlog = backlog;
+        this.handler = handler;
+        this.onDrop = onDrop;
+        this.onError = onError;
+    }
+
+    // Передаёт элемент на стадию, ожидая места в очереди. При остановке элемент отбрасывается
+    public void submit(T item, BooleanSupplier stopped) {
+        if (queue == null) {
+            throw new IllegalStateException("Стадия " + name + " читает из внешней очереди");
+        }
+        long start = System.nanoTime();
+        try {
+            while (!queue.offer(item, POLL_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                if (stopped.getAsBoolean()) {
+                    onDrop.accept(item);
+                    return;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            onDrop.accept(item);
+        } finally {
+            waitNanos.add(System.nanoTime() - start);
+        }
+    }
+
+    // Потоки стадии работают, пока есть элементы, и завершаются, когда обход закончен или остановлен
+    public List<CompletableFuture<Void>> start(Executor executor, BooleanSupplier finished, BooleanSupplier stopped) {
+        List<CompletableFuture<Void>> workers = new ArrayList<>(threads);
+        for (int i = 0; i < threads; i++) {
+            workers.add(CompletableFuture.runAsync(() -> runWorker(finished, stopped), executor));
+        }
+        return workers;
+    }
+
+    private void runWorker(BooleanSupplier finished, BooleanSupplier stopped) {
+        while (true) {
+            T item;
+            try {
+                item = source.poll(POLL_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                log.warn("Поток стадии {} прерван", name);
+                Thread.currentThread().interrupt();
+                return;
+            }
+            if (item == null) {
+                if (finished.getAsBoolean() || stopped.getAsBoolean()) {
+                    return;
+                }
+                continue;
+            }
+            if (stopped.getAsBoolean()) {
+                onDrop.accept(item);
+                continue;
+            }
+
+            long start = System.nanoTime();
+            try {
+                handler.accept(item);
+                processed.increment();
+            } catch (Exception e) {
+                failed.increment();
+                log.error("Ошибка на стадии {}: {}", name, e.getMessage());
+                onError.accept(item);
+            } finally {
+                busyNanos.add(System.nanoTime() - start);
+            }
+        }
+    }
+
+    // Загрузка — доля времени потоков, занятых обработкой (включая ожидание места на следующей стадии).
+    // Ожидание — сколько предыдущая стадия ждала места в очереди этой: большое значение указывает на узкое место
+    public synchronized String report() {
+        long now = System.nanoTime();
+        long elapsed = Math.max(1, now - lastReportNanos);
+        lastReportNanos = now;
+        double utilization = 100.0 * busyNanos.sumThenReset() / ((double) elapsed * threads);
+        long waitMs = TimeUnit.NANOSECONDS.toMillis(waitNanos.sumThenReset());
+        return String.format("%s[потоков=%d, обработано=%d, ошибок=%d, в очереди=%d, загрузка=%.0f%%, ожидание=%d мс]",
+                name, threads, processed.sum(), failed.sum(), backlog.getAsInt(), utilization, waitMs);
+    }
+}
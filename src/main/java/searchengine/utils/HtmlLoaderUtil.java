@@ -4,43 +4,70 @@ import lombok.extern.slf4j.Slf4j;
 import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
 import org.springframework.stereotype.Component;
+import searchengine.config.CrawlerSettings;
 import searchengine.config.FakeConfig;
+import searchengine.dto.indexing.FetchResult;
+import searchengine.services.HostPolitenessScheduler;
 
+import javax.annotation.PreDestroy;
 import java.io.IOException;
-import java.net.HttpURLConnection;
+import java.io.InputStream;
 import java.net.URI;
-import java.util.concurrent.ConcurrentHashMap;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Locale;
+import java.util.concurrent.*;
 import java.util.function.BiFunction;
 
 @Slf4j
 @Component
 public class HtmlLoaderUtil {
-    private static final int TASK_TIMEOUT_SECONDS = 10;
     private final ConcurrentHashMap<String, Boolean> domainMethodMap = new ConcurrentHashMap<>();
+    private final HostPolitenessScheduler politenessScheduler;
+    private final HttpClient httpClient;
+    private final Duration requestTimeout;
+    private final ExecutorService fetchExecutor;
+
+    public HtmlLoaderUtil(HostPolitenessScheduler politenessScheduler, HttpClient crawlerHttpClient,
+                          CrawlerSettings crawlerSettings) {
+        this.politenessScheduler = politenessScheduler;
+        this.httpClient = crawlerHttpClient;
+        this.requestTimeout = Duration.ofMillis(crawlerSettings.getHttp().getRequestTimeoutMs());
+        this.fetchExecutor = Executors.newFixedThreadPool(Math.max(1, crawlerSettings.getFetchThreads()));
+    }
 
-    public Document fetchHtmlDocument(String url, FakeConfig fakeConfig) {
-        return determineMethod(
-                url,
-                fakeConfig,
-                this::fetchWithFakeConfig,
-                this::fetchWithoutFakeConfig
-        );
+    // Загружает страницу одним запросом: код ответа, заголовки и документ берутся из одного ответа.
+    // Блокирует вызывающий поток до ответа — для индексации отдельной страницы; обход использует fetchAsync
+    public FetchResult fetch(String url, FakeConfig fakeConfig) {
+        try {
+            return fetchAsync(url, fakeConfig).join();
+        } catch (CompletionException | CancellationException e) {
+            log.warn("Ошибка загрузки URL: {} {}", url, e.getMessage());
+            return null;
+        }
     }
 
-    public int getHttpStatusCode(String url, FakeConfig fakeConfig) {
-        return determineMethod(
-                url,
-                fakeConfig,
-                this::getStatusCodeWithFakeConfig,
-                this::getStatusCodeWithoutFakeConfig
+    // Запрос выполняется, когда планировщик хоста выдаст слот; вызывающий поток не ждёт
+    public CompletableFuture<FetchResult> fetchAsync(String url, FakeConfig fakeConfig) {
+        return politenessScheduler.submit(
+                getBaseUrl(url),
+                () -> determineMethod(url, fakeConfig, this::fetchWithFakeConfig, this::fetchWithoutFakeConfig),
+                fetchExecutor
         );
     }
 
-    private <T> T determineMethod(
+    @PreDestroy
+    public void shutdown() {
+        fetchExecutor.shutdownNow();
+    }
+
+    private FetchResult determineMethod(
             String url,
             FakeConfig fakeConfig,
-            BiFunction<String, FakeConfig, T> withFakeConfig,
-            BiFunction<String, FakeConfig, T> withoutFakeConfig
+            BiFunction<String, FakeConfig, FetchResult> withFakeConfig,
+            BiFunction<String, FakeConfig, FetchResult> withoutFakeConfig
     ) {
         String baseUrl = getBaseUrl(url);
 
@@ -50,39 +77,33 @@ public class HtmlLoaderUtil {
             return useFakeConfig ? withFakeConfig.apply(url, fakeConfig) : withoutFakeConfig.apply(url, fakeConfig);
         }
 
-        T result = withFakeConfig.apply(url, fakeConfig);
+        FetchResult result = withFakeConfig.apply(url, fakeConfig);
         if (isSuccessful(result)) {
             domainMethodMap.put(baseUrl, true);
             return result;
         }
 
-        result = withoutFakeConfig.apply(url, fakeConfig);
-        if (isSuccessful(result)) {
+        FetchResult fallback = withoutFakeConfig.apply(url, fakeConfig);
+        if (isSuccessful(fallback)) {
             domainMethodMap.put(baseUrl, false); // Запоминаем решение
+            return fallback;
         }
-        return result;
+        return fallback != null ? fallback : result;
     }
 
-    private boolean isSuccessful(Object result) {
-        if (result instanceof Document) {
-            return true;
-        } else if (result instanceof Integer) {
-            int code = (Integer) result;
-            return code >= 200 && code < 300;
-        }
-        return false;
+    private boolean isSuccessful(FetchResult result) {
+        return result != null && result.isSuccessful();
     }
 
-    private Document fetchWithFakeConfig(String url, FakeConfig fakeConfig) {
+    private FetchResult fetchWithFakeConfig(String url, FakeConfig fakeConfig) {
         try {
             log.info("Загрузка URL через FakeConfig: {}", url);
-            Thread.sleep(1000);
-            return Jsoup.connect(url)
-                    .userAgent(fakeConfig.getUserAgent())
-                    .referrer(fakeConfig.getReferrer())
-                    .timeout(TASK_TIMEOUT_SECONDS * 1000)
-                    .get();
-        } catch (IOException e) {
+            HttpRequest request = newRequest(url)
+                    .header("User-Agent", fakeConfig.getUserAgent())
+                    .header("Referer", fakeConfig.getReferrer())
+                    .build();
+            return execute(request);
+        } catch (IOException | IllegalArgumentException e) {
             log.warn("Ошибка загрузки URL через FakeConfig: {}", url);
         } catch (InterruptedException e) {
             log.error("Операция прервана: {}", e.getMessage());
@@ -91,51 +112,58 @@ public class HtmlLoaderUtil {
         return null;
     }
 
-    private Document fetchWithoutFakeConfig(String url, FakeConfig fakeConfig) {
+    private FetchResult fetchWithoutFakeConfig(String url, FakeConfig fakeConfig) {
         try {
             log.info("Загрузка URL без FakeConfig: {}", url);
-            return Jsoup.connect(url)
-                    .timeout(TASK_TIMEOUT_SECONDS * 1000)
-                    .get();
-        } catch (IOException e) {
+            return execute(newRequest(url).build());
+        } catch (IOException | IllegalArgumentException e) {
             log.warn("Ошибка загрузки URL без FakeConfig: {}.", url);
+        } catch (InterruptedException e) {
+            log.error("Операция прервана: {}", e.getMessage());
+            Thread.currentThread().interrupt();
         }
         return null;
     }
 
-    private int getStatusCodeWithFakeConfig(String url, FakeConfig fakeConfig) {
-        return fetchHttpStatusCode(url, fakeConfig, true);
+    private HttpRequest.Builder newRequest(String url) {
+        return HttpRequest.newBuilder(URI.create(url))
+                .timeout(requestTimeout)
+                .header("Accept", "text/html,application/xhtml+xml")
+                .GET();
     }
 
-    private int getStatusCodeWithoutFakeConfig(String url, FakeConfig fakeConfig) {
-        return fetchHttpStatusCode(url, fakeConfig, false);
-    }
+    // Выполняет запрос через общий клиент; Jsoup разбирает документ прямо из потока ответа
+    private FetchResult execute(HttpRequest request) throws IOException, InterruptedException {
+        HttpResponse<InputStream> response = httpClient.send(request, HttpResponse.BodyHandlers.ofInputStream());
 
-    private int fetchHttpStatusCode(String url, FakeConfig fakeConfig, boolean useFakeConfig) {
-        try {
-            URI uri = new URI(url);
-            HttpURLConnection connection = (HttpURLConnection) uri.toURL().openConnection();
-            connection.setRequestMethod("GET");
-            connection.setConnectTimeout(5000);
-            connection.setReadTimeout(5000);
-
-            if (useFakeConfig && fakeConfig != null) {
-                connection.setRequestProperty("User-Agent", fakeConfig.getUserAgent());
-                connection.setRequestProperty("Referer", fakeConfig.getReferrer());
+        int statusCode = response.statusCode();
+        String finalUrl = response.uri().toString();
+        String contentType = response.headers().firstValue("Content-Type").orElse("");
+        log.info("HTTP-код {}: {}", finalUrl, statusCode);
+
+        try (InputStream body = response.body()) {
+            Document document = null;
+            if (statusCode >= 200 && statusCode < 300 && isHtml(contentType)) {
+                document = Jsoup.parse(body, extractCharset(contentType), finalUrl);
             }
+            return new FetchResult(statusCode, response.headers().map(), finalUrl, document);
+        }
+    }
 
-            int statusCode = connection.getResponseCode();
-            log.info("HTTP-код {} {}: {}", url, useFakeConfig ? "FakeConfig" : "без FakeConfig", statusCode);
-            connection.disconnect();
-            return statusCode;
-        } catch (IOException e) {
-            log.warn("Ошибка HTTP-кода {} {}: Причина: {}",
-                    url, useFakeConfig ? "FakeConfig" : "без FakeConfig", e.getMessage());
-        } catch (Exception e) {
-            log.error("Ошибка HTTP-кода {} {}: Причина: {}",
-                    url, useFakeConfig ? "FakeConfig" : "без FakeConfig", e.getMessage());
+    private boolean isHtml(String contentType) {
+        String type = contentType.toLowerCase(Locale.ROOT);
+        return type.isEmpty() || type.startsWith("text/html") || type.startsWith("application/xhtml+xml");
+    }
+
+    // Кодировка из заголовка Content-Type; null — Jsoup определит её по meta-тегу
+    private String extractCharset(String contentType) {
+        for (String part : contentType.split(";")) {
+            String trimmed = part.trim();
+            if (trimmed.toLowerCase(Locale.ROOT).startsWith("charset=")) {
+                return trimmed.substring("charset=".length()).replace("\"", "").trim();
+            }
         }
-        return -1;
+        return null;
     }
 
     public static String getSchemeBaseUrl(String url) {
@@ -166,4 +194,4 @@ public class HtmlLoaderUtil {
             return "";
         }
     }
-}
\ No newline at end of file
+}
@@ -1,34 +1,36 @@
 package searchengine.utils;
 
 import org.apache.lucene.morphology.LuceneMorphology;
+import org.apache.lucene.morphology.WrongCharaterException;
+import org.apache.lucene.morphology.english.EnglishLuceneMorphology;
 import org.apache.lucene.morphology.russian.RussianLuceneMorphology;
-import org.jsoup.Jsoup;
 import org.springframework.stereotype.Component;
+import searchengine.dto.indexing.LemmaOccurrences;
 
 import java.io.IOException;
 import java.util.*;
 @Component
 public class LemmatizerUtil {
 
-    private static final Set<String> EXCLUDED_POS_TAGS = new HashSet<>(Arrays.asList(
-            "СОЮЗ", "МЕЖД", "ПРЕДЛ", "ЧАСТ", "МС"));
+    // Часть речи — последнее слово строки морфологии («и|l СОЮЗ»); храним с пробелом, чтобы проверять endsWith
+    private static final String[] EXCLUDED_POS_SUFFIXES = {" СОЮЗ", " МЕЖД", " ПРЕДЛ", " ЧАСТ", " МС"};
+    // Служебные части речи английского словаря: ищутся среди слов строки морфологии после леммы
+    private static final String[] EXCLUDED_ENGLISH_TAGS = {"CONJ", "PREP", "ARTICLE", "INT", "PART"};
 
-    private final LuceneMorphology luceneMorphology;
+    private final LuceneMorphology russianMorphology;
+    private final LuceneMorphology englishMorphology;
+    private final MorphCache morphCache;
 
-    public LemmatizerUtil() throws IOException {
-        this.luceneMorphology = new RussianLuceneMorphology();
-    }
-
-    private static String preprocessText(String text) {
-        return text.replaceAll("[^а-яА-Я\\s]", "").toLowerCase();
+    public LemmatizerUtil(MorphCache morphCache) throws IOException {
+        this.russianMorphology = new RussianLuceneMorphology();
+        this.englishMorphology = new EnglishLuceneMorphology();
+        this.morphCache = morphCache;
     }
 
     private boolean isExcluded(List<String> morphInfo) {
         for (String info : morphInfo) {
-            String[] parts = info.split("\\s+");
-            if (parts.length > 1) {
-                String posTag = parts[parts.length - 1];
-                if (EXCLUDED_POS_TAGS.contains(posTag)) {
+            for (String suffix : EXCLUDED_POS_SUFFIXES) {
+                if (info.endsWith(suffix)) {
                     return true;
                 }
             }
@@ -36,55 +38,103 @@ public class LemmatizerUtil {
         return false;
     }
 
-    private List<String> getLemmasForWord(String word) {
-        List<String> morphInfo = luceneMorphology.getMorphInfo(word);
+    private boolean isExcludedEnglish(List<String> morphInfo) {
+        for (String info : morphInfo) {
+            for (String tag : EXCLUDED_ENGLISH_TAGS) {
+                if (hasTag(info, tag)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
 
-        if (morphInfo.isEmpty() || isExcluded(morphInfo)) {
-            return Collections.emptyList();
+    // Тег в строке морфологии как отдельное слово: после пробела и перед пробелом или концом строки
+    private static boolean hasTag(String info, String tag) {
+        int from = info.indexOf('|') + 1;
+        int index;
+        while ((index = info.indexOf(tag, from)) >= 0) {
+            int end = index + tag.length();
+            if (index > 0 && info.charAt(index - 1) == ' ' && (end == info.length() || info.charAt(end) == ' ')) {
+                return true;
+            }
+            from = end;
         }
+        return false;
+    }
 
-        List<String> lemmas = new ArrayList<>();
-        for (String info : morphInfo) {
-            String lemma = info.split("\\|")[0];
-            lemmas.add(lemma);
+    // Леммы слова берутся из кэша; морфология вызывается только при промахе. Русские и английские слова
+    // состоят из разных букв, поэтому кэш у них общий
+    private List<String> getLemmasForWord(String word, WordTokenizer.Script script) {
+        List<String> lemmas = morphCache.get(word);
+        if (lemmas == null) {
+            lemmas = script == WordTokenizer.Script.LATIN ? lookupEnglishLemmas(word) : lookupLemmas(word);
+            morphCache.put(word, lemmas);
         }
         return lemmas;
     }
 
-    public Map<String, Integer> getLemmasCount(String text) {
-        text = preprocessText(text);
-
-        String[] words = text.split("\\s+");
-        Map<String, Integer> lemmasCount = new HashMap<>();
+    private List<String> lookupLemmas(String word) {
+        List<String> morphInfo = russianMorphology.getMorphInfo(word);
+        if (morphInfo.isEmpty() || isExcluded(morphInfo)) {
+            return Collections.emptyList();
+        }
+        return lemmasOf(morphInfo);
+    }
 
-        for (String word : words) {
-            if (word.isEmpty()) {
-                continue;
-            }
+    // Однобуквенные латинские слова (артикль «a», местоимение «I», обозначения) не индексируются
+    private List<String> lookupEnglishLemmas(String word) {
+        if (word.length() < 2) {
+            return Collections.emptyList();
+        }
+        List<String> morphInfo;
+        try {
+            morphInfo = englishMorphology.getMorphInfo(word);
+        } catch (WrongCharaterException e) {
+            return Collections.emptyList();
+        }
+        if (morphInfo.isEmpty() || isExcludedEnglish(morphInfo)) {
+            return Collections.emptyList();
+        }
+        return lemmasOf(morphInfo);
+    }
 
-            List<String> lemmas = getLemmasForWord(word);
-            for (String lemma : lemmas) {
-                lemmasCount.put(lemma, lemmasCount.getOrDefault(lemma, 0) + 1);
+    // Без регулярных выражений: лемма — начало строки морфологии до «|», повторы отбрасываются
+    private static List<String> lemmasOf(List<String> morphInfo) {
+        if (morphInfo.size() == 1) {
+            return List.of(lemmaOf(morphInfo.get(0)));
+        }
+        List<String> lemmas = new ArrayList<>(morphInfo.size());
+        for (String info : morphInfo) {
+            String lemma = lemmaOf(info);
+            if (!lemmas.contains(lemma)) {
+                lemmas.add(lemma);
             }
         }
-        return lemmasCount;
+        return Collections.unmodifiableList(lemmas);
     }
 
-    public String cleanHtml(String html) {
-        return Jsoup.parse(html).text();
+    private static String lemmaOf(String info) {
+        int separator = info.indexOf('|');
+        return separator >= 0 ? info.substring(0, separator) : info;
+    }
+
+    // Леммы текста с позициями: номер слова и смещение его первой буквы в тексте.
+    // Текст разбирается за один проход (WordTokenizer), вхождения сразу копятся в массивах LemmaOccurrences
+    public Map<String, LemmaOccurrences> getLemmaOccurrences(String text) {
+        Map<String, LemmaOccurrences> occurrences = new HashMap<>();
+        WordTokenizer.tokenize(text, (word, script, position, offset) -> {
+            for (String lemma : getLemmasForWord(word, script)) {
+                occurrences.computeIfAbsent(lemma, key -> new LemmaOccurrences()).add(position, offset);
+            }
+        });
+        return occurrences;
     }
 
     public Set<String> extractLemmasFromQuery(String query) {
-        String processQuery = preprocessText(query);
-        String[] words = processQuery.split("\\s+");
         Set<String> uniqueLemmas = new HashSet<>();
-
-        for (String word : words) {
-            if (!word.isEmpty()) {
-                List<String> lemmas = getLemmasForWord(word);
-                uniqueLemmas.addAll(lemmas);
-            }
-        }
+        WordTokenizer.tokenize(query, (word, script, position, offset) ->
+                uniqueLemmas.addAll(getLemmasForWord(word, script)));
         return uniqueLemmas;
     }
 }
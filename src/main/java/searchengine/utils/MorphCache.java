@@ -0,0 +1,78 @@
+package searchengine.utils;
+
+import org.springframework.stereotype.Component;
+import searchengine.config.CrawlerSettings;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+// Кэш «словоформа -> леммы» перед LuceneMorphology, общий для индексации и построения сниппетов.
+// Частоты слов в тексте распределены по Ципфу, поэтому небольшой кэш закрывает большую часть запросов.
+// Размер ограничен двумя поколениями: когда текущее заполняется, оно становится предыдущим, а старое
+// предыдущее отбрасывается целиком. Попадание в предыдущее поколение переносит слово в текущее,
+// так что частые слова переживают смену поколений без блокировок и учёта порядка обращений.
+@Component
+public class MorphCache {
+    private final int generationSize;
+    private volatile Map<String, List<String>> current;
+    private volatile Map<String, List<String>> previous;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder rotations = new LongAdder();
+
+    public MorphCache(CrawlerSettings crawlerSettings) {
+        this.generationSize = Math.max(1, crawlerSettings.getMorphCache().getMaxEntries() / 2);
+        this.current = new ConcurrentHashMap<>(generationSize);
+        this.previous = new ConcurrentHashMap<>();
+    }
+
+    // null — слова нет в кэше. Пустой список означает, что слово не разбирается или исключено по части речи
+    public List<String> get(String word) {
+        List<String> lemmas = current.get(word);
+        if (lemmas == null) {
+            lemmas = previous.get(word);
+            if (lemmas == null) {
+                misses.increment();
+                return null;
+            }
+            put(word, lemmas);
+        }
+        hits.increment();
+        return lemmas;
+    }
+
+    public void put(String word, List<String> lemmas) {
+        Map<String, List<String>> generation = current;
+        generation.put(word, lemmas);
+        if (generation.size() >= generationSize) {
+            rotate(generation);
+        }
+    }
+
+    private synchronized void rotate(Map<String, List<String>> full) {
+        if (current != full) {
+            return;
+        }
+        previous = full;
+        current = new ConcurrentHashMap<>(generationSize);
+        rotations.increment();
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public String report() {
+        long hitCount = hits.sum();
+        long total = hitCount + misses.sum();
+        double hitRate = total == 0 ? 0 : 100.0 * hitCount / total;
+        return String.format("morph-cache[слов=%d, попаданий=%d, промахов=%d, доля попаданий=%.1f%%, смен поколений=%d]",
+                current.size() + previous.size(), hitCount, total - hitCount, hitRate, rotations.sum());
+    }
+}
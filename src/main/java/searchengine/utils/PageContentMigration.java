@@ -0,0 +1,118 @@
+package searchengine.utils;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.List;
+import java.util.Map;
+
+// Переносит содержимое страниц из старой колонки page.content в page_content (в сжатом виде).
+// При старте только делает колонку необязательной, чтобы новые страницы сохранялись без неё;
+// @DependsOn гарантирует, что схема уже обновлена Hibernate. Само содержимое переносится после запуска
+// приложения в фоновом потоке пачками по CHUNK_SIZE страниц, каждая пачка — отдельным запросом, поэтому старт
+// не ждёт переноса. Пока перенос идёт, у ещё не перенесённых страниц нет сниппетов. Колонка удаляется
+// только при migration.drop-page-content-column: true и только если перенесены все страницы.
+@Slf4j
+@Component
+@DependsOn("entityManagerFactory")
+public class PageContentMigration {
+    private static final int CHUNK_SIZE = 200;
+    // Перенос идёт одновременно с индексацией: новые страницы пишутся без content и в выборку не попадают,
+    // а INSERT IGNORE пропускает страницы, сохранённые или удалённые, пока читалась пачка
+    private static final String SELECT_SQL = "SELECT p.id, p.content FROM page p "
+            + "LEFT JOIN page_content c ON c.page_id = p.id "
+            + "WHERE c.page_id IS NULL AND p.content IS NOT NULL AND p.id > ? ORDER BY p.id LIMIT ?";
+    private static final String INSERT_SQL = "INSERT IGNORE INTO page_content (page_id, data, length) VALUES (?, ?, ?)";
+    private static final String NOT_MIGRATED_SQL = "SELECT COUNT(*) FROM page p "
+            + "LEFT JOIN page_content c ON c.page_id = p.id WHERE c.page_id IS NULL AND p.content IS NOT NULL";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final boolean dropLegacyColumn;
+    private volatile boolean legacyColumn;
+
+    public PageContentMigration(JdbcTemplate jdbcTemplate,
+                                @Value("${migration.drop-page-content-column:false}") boolean dropLegacyColumn) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.dropLegacyColumn = dropLegacyColumn;
+    }
+
+    @PostConstruct
+    public void prepareSchema() {
+        List<String> nullable = jdbcTemplate.queryForList("SELECT is_nullable FROM information_schema.columns "
+                + "WHERE table_schema = DATABASE() AND table_name = 'page' AND column_name = 'content'", String.class);
+        if (nullable.isEmpty()) {
+            return;
+        }
+
+        // Сущность страницы больше не заполняет content: без этого вставка новых страниц нарушала бы NOT NULL
+        if (!"YES".equalsIgnoreCase(nullable.get(0))) {
+            jdbcTemplate.execute("ALTER TABLE page MODIFY content MEDIUMTEXT NULL");
+        }
+        legacyColumn = true;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void migrateInBackground() {
+        if (!legacyColumn) {
+            return;
+        }
+        Thread migrator = new Thread(this::migrate, "page-content-migration");
+        migrator.setDaemon(true);
+        migrator.start();
+    }
+
+    // Прерванный перенос продолжится при следующем запуске: выбираются только страницы без page_content
+    private void migrate() {
+        try {
+            copyContent();
+            dropColumnIfMigrated();
+        } catch (DataAccessException e) {
+            log.error("Перенос содержимого страниц прерван, он продолжится при следующем запуске: {}",
+                    e.getMessage());
+        }
+    }
+
+    private void dropColumnIfMigrated() {
+        if (!dropLegacyColumn) {
+            log.info("Колонка page.content сохранена; для удаления задайте migration.drop-page-content-column: true");
+            return;
+        }
+        Long notMigrated = jdbcTemplate.queryForObject(NOT_MIGRATED_SQL, Long.class);
+        if (notMigrated != null && notMigrated > 0) {
+            log.error("Колонка page.content не удалена: содержимое {} страниц не перенесено", notMigrated);
+            return;
+        }
+        jdbcTemplate.execute("ALTER TABLE page DROP COLUMN content");
+        log.info("Колонка page.content удалена");
+    }
+
+    private void copyContent() {
+        long migrated = 0;
+        int lastId = 0;
+        List<Map<String, Object>> rows;
+        while (!(rows = jdbcTemplate.queryForList(SELECT_SQL, lastId, CHUNK_SIZE)).isEmpty()) {
+            if (migrated == 0) {
+                log.info("Перенос содержимого страниц в page_content...");
+            }
+            jdbcTemplate.batchUpdate(INSERT_SQL, rows, rows.size(), (ps, row) -> {
+                String content = (String) row.get("content");
+                ps.setInt(1, ((Number) row.get("id")).intValue());
+                ps.setBytes(2, PageContentCodec.compress(content));
+                ps.setInt(3, content.length());
+            });
+            lastId = ((Number) rows.get(rows.size() - 1).get("id")).intValue();
+            migrated += rows.size();
+            log.info("Перенесено страниц: {}", migrated);
+        }
+        if (migrated > 0) {
+            log.info("Содержимое {} страниц перенесено в page_content", migrated);
+        }
+    }
+}
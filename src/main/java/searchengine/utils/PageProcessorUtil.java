@@ -2,16 +2,18 @@ package searchengine.utils;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.jsoup.nodes.Document;
 import org.springframework.stereotype.Component;
 import searchengine.config.FakeConfig;
 import searchengine.constants.ErrorMessages;
-import searchengine.model.LemmaEntity;
+import searchengine.dto.indexing.FetchResult;
+import searchengine.dto.indexing.LemmaOccurrences;
+import searchengine.dto.indexing.PageText;
 import searchengine.model.PageEntity;
 import searchengine.model.SiteEntity;
 import searchengine.repository.PageRepository;
+import searchengine.services.crud.IndexBatchWriter;
 import searchengine.services.crud.IndexCRUDService;
-import searchengine.services.crud.LemmaCRUDService;
+import searchengine.services.crud.LemmaFrequencyCounter;
 import searchengine.services.crud.PageCRUDService;
 import searchengine.services.crud.SiteCRUDService;
 import searchengine.task.LinkProcessorTask;
@@ -28,28 +30,52 @@ public class PageProcessorUtil {
     private final LemmatizerUtil lemmatizerUtil;
     private final HtmlLoaderUtil htmlLoaderUtil;
     private final FakeConfig fakeConfig;
-    private final LemmaCRUDService lemmaCRUDService;
     private final IndexCRUDService indexCRUDService;
+    private final IndexBatchWriter indexBatchWriter;
+    private final LemmaFrequencyCounter lemmaFrequencyCounter;
     private final SiteCRUDService siteCRUDService;
     private final PageCRUDService pageCRUDService;
-    private final EntityTableUtil entityTableService;
     private final PageRepository pageRepository;
 
-    public void saveAndProcessPage(String url, Document document, SiteEntity siteEntity) throws Exception {
-        String path = new URI(url).getPath();
-        log.info("PATH: {}", path);
-        int statusCode = htmlLoaderUtil.getHttpStatusCode(url, fakeConfig);
-        String content = document.html();
+    public void saveAndProcessPage(String url, FetchResult fetchResult, SiteEntity siteEntity) throws Exception {
+        String content = fetchResult.getBody();
 
         if (LinkProcessorTask.isEmptyPage(content)) {
             log.info("Skipping empty page: {}", url);
             return;
         }
 
-        PageEntity pageEntity = pageCRUDService.createPageIfNotExists(siteEntity, path, statusCode, content);
+        // Заголовок и видимый текст извлекаются один раз и сохраняются: поиск берёт их готовыми
+        PageText pageText = PageText.from(fetchResult.getDocument());
+        savePage(url, fetchResult.getStatusCode(), content, pageText, countLemmas(pageText.getText()), siteEntity,
+                false);
+    }
+
+    // Сохраняет страницу с заранее посчитанными леммами: в конвейере индексации они считаются на отдельной стадии.
+    // restored — адрес восстановлен из журнала: страница могла быть записана до остановки обхода, а её строки индекса —
+    // только частично, поэтому она индексируется заново. Остальные адреса новые, и лишних запросов для них нет
+    public void savePage(String url, int statusCode, String content, PageText pageText,
+                         Map<String, LemmaOccurrences> lemmas, SiteEntity siteEntity, boolean restored)
+            throws Exception {
+        String path = new URI(url).getPath();
+        log.info("PATH: {}", path);
+
+        if (restored && pageRepository.findBySiteAndPath(siteEntity, path).isPresent()) {
+            log.info("Page saved before restart, reindexing: {}", path);
+            pageCRUDService.deletePageLemmaByPath(siteEntity, path);
+        }
+
+        PageEntity pageEntity = pageCRUDService.createPageIfNotExists(siteEntity, path, statusCode, content,
+                pageText);
         log.info("Page saved to database: {}", path);
 
-        processLemmasAndIndexes(pageEntity, siteEntity, content);
+        saveLemmasAndIndexes(pageEntity, siteEntity, lemmas);
+    }
+
+    // Леммы считаются по видимому тексту страницы — тому же, из которого строятся сниппеты;
+    // позиции вхождений указывают в этот текст
+    public Map<String, LemmaOccurrences> countLemmas(String text) {
+        return lemmatizerUtil.getLemmaOccurrences(text);
     }
 
     public void processPage(String url) {
@@ -64,17 +90,20 @@ public class PageProcessorUtil {
                     return;
                 }
             }
+            // Строки индекса и прирост частоты лемм страницы могут ещё лежать в буферах пакетной записи
+            indexBatchWriter.flush();
+            lemmaFrequencyCounter.flush();
             Optional<PageEntity> pageEntity = pageRepository.findBySiteAndPath(siteEntity, HtmlLoaderUtil.getPath(url));
             SiteEntity finalSiteEntity = siteEntity;
             pageEntity.ifPresent(page -> pageCRUDService.deletePageLemmaByPath(finalSiteEntity, HtmlLoaderUtil.getPath(url)));
-            entityTableService.resetAutoIncrementForAllTables();
-            Document document = htmlLoaderUtil.fetchHtmlDocument(url, fakeConfig);
-            if (document == null) {
+            FetchResult fetchResult = htmlLoaderUtil.fetch(url, fakeConfig);
+            if (fetchResult == null || !fetchResult.isSuccessful()) {
                 log.warn("Не удалось выполнить индексацию для страницы: {}", url);
                 siteCRUDService.updateSiteError(siteEntity, ErrorMessages.PAGE_UNAVAILABLE);
                 return;
             }
-            saveAndProcessPage(url, document, siteEntity);
+            saveAndProcessPage(url, fetchResult, siteEntity);
+            lemmaFrequencyCounter.flush();
             siteCRUDService.updateSiteStatusAfterIndexing(HtmlLoaderUtil.getSchemeBaseUrl(url));
             log.info("Индексация страницы {} завершена успешно.", url);
         } catch (Exception e) {
@@ -85,14 +114,7 @@ public class PageProcessorUtil {
         }
     }
 
-    public void processLemmasAndIndexes(PageEntity pageEntity, SiteEntity siteEntity, String textContent) {
-        Map<String, Integer> lemmasCount = lemmatizerUtil.getLemmasCount(textContent);
-        for (Map.Entry<String, Integer> entry : lemmasCount.entrySet()) {
-            String lemmaText = entry.getKey();
-            Integer count = entry.getValue();
-
-            LemmaEntity lemma = lemmaCRUDService.updateLemmaEntity(lemmaText, siteEntity);
-            indexCRUDService.createIndex(pageEntity, lemma, count.floatValue());
-        }
+    private void saveLemmasAndIndexes(PageEntity pageEntity, SiteEntity siteEntity, Map<String, LemmaOccurrences> lemmas) {
+        indexCRUDService.saveLemmasAndIndexes(pageEntity, siteEntity, lemmas);
     }
 }
@@ -0,0 +1,67 @@
+package searchengine.utils;
+
+import searchengine.dto.indexing.LemmaOccurrences;
+
+import java.io.ByteArrayOutputStream;
+
+// Позиции леммы на странице для index_table.positions: число вхождений, затем для каждого вхождения
+// разность номера слова и разность смещения с предыдущим. Числа записываются varint (7 бит на байт),
+// поэтому типичное вхождение занимает 2–3 байта.
+public final class PositionCodec {
+
+    private PositionCodec() {
+    }
+
+    public static byte[] encode(LemmaOccurrences occurrences) {
+        int count = occurrences.count();
+        ByteArrayOutputStream output = new ByteArrayOutputStream(2 + count * 3);
+        writeVarint(output, count);
+        int lastPosition = 0;
+        int lastOffset = 0;
+        for (int i = 0; i < count; i++) {
+            writeVarint(output, occurrences.positionAt(i) - lastPosition);
+            writeVarint(output, occurrences.offsetAt(i) - lastOffset);
+            lastPosition = occurrences.positionAt(i);
+            lastOffset = occurrences.offsetAt(i);
+        }
+        return output.toByteArray();
+    }
+
+    public static LemmaOccurrences decode(byte[] data) {
+        int[] cursor = {0};
+        int count = readVarint(data, cursor);
+        LemmaOccurrences occurrences = new LemmaOccurrences(count);
+        int position = 0;
+        int offset = 0;
+        for (int i = 0; i < count; i++) {
+            position += readVarint(data, cursor);
+            offset += readVarint(data, cursor);
+            occurrences.add(position, offset);
+        }
+        return occurrences;
+    }
+
+    private static void writeVarint(ByteArrayOutputStream output, int value) {
+        while ((value & ~0x7F) != 0) {
+            output.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        output.write(value);
+    }
+
+    private static int readVarint(byte[] data, int[] cursor) {
+        int value = 0;
+        int shift = 0;
+        while (true) {
+            if (cursor[0] >= data.length || shift > 28) {
+                throw new IllegalStateException("Повреждённые позиции леммы");
+            }
+            byte b = data[cursor[0]++];
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+            shift += 7;
+        }
+    }
+}
@@ -3,16 +3,16 @@ package searchengine.utils;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
+import searchengine.dto.search.RankedPage;
 import searchengine.model.LemmaEntity;
-import searchengine.model.PageEntity;
 import searchengine.model.SiteEntity;
 import searchengine.repository.IndexRepository;
 import searchengine.repository.LemmaRepository;
 import searchengine.repository.PageRepository;
+import searchengine.services.index.InvertedIndex;
 
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.stream.Collectors;
 
 @Component
 @RequiredArgsConstructor
@@ -22,114 +22,73 @@ public class QueryUtil {
     private final LemmatizerUtil lemmatizerUtil;
     private final IndexRepository indexRepository;
     private final PageRepository pageRepository;
+    private final InvertedIndex invertedIndex;
     private static final double THRESHOLD_PERCENTAGE = 90;
     private final ConcurrentHashMap<String, Set<String>> lemmaCache = new ConcurrentHashMap<>();
 
-    public List<String> getPresentSortedLemmaNames(String query) {
-        Set<String> extractedLemmasNames = extractLemmas(query);
-        Set<String> afterExtractingLemmas = filterLemmasByPercentage(extractedLemmasNames);
-        List<LemmaEntity> lemmaEntities = fetchLemmaEntities((afterExtractingLemmas));
-        List<LemmaEntity> agg = aggregateLemmaFrequencies(lemmaEntities);
-        return getSortedLemmaNamesFromEntities(agg);
-    }
-
-    public Set<PageEntity> findMatchingPages(String query, SiteEntity siteEntity) {
-        List<String> formatted = getPresentSortedLemmaNames(query);
-        Set<PageEntity> getPageFromSite = getPagesMatchingAllLemmas(formatted, query);
-        return filterPagesBySite(getPageFromSite, siteEntity);
-    }
-
-    // Фильтрует страницы по сайту.
-    private Set<PageEntity> filterPagesBySite(Set<PageEntity> pageEntities, SiteEntity siteEntity) {
-        if (siteEntity == null) {
-            return pageEntities;
+    // Страницы, на которых есть все леммы запроса, с суммой рангов этих лемм, в произвольном порядке.
+    // Совпадение и ранжирование выполняются одним агрегирующим запросом к index_table
+    // вместо проверки каждой пары «страница — лемма» отдельным запросом, а если включён индекс в памяти
+    // и он загружен — без обращения к index_table вовсе
+    public List<RankedPage> findRankedPages(Set<String> queryLemmas, SiteEntity siteEntity) {
+        if (queryLemmas.isEmpty()) {
+            return Collections.emptyList();
         }
-        return pageEntities.stream()
-                .filter(pageEntity -> pageEntity.getSite().equals(siteEntity))
-                .collect(Collectors.toSet());
-    }
 
-    private Set<String> filterLemmasByPercentage(Set<String> queryLemmas) {
-        long totalPageCount = pageRepository.count();
+        List<LemmaEntity> lemmaEntities = siteEntity == null
+                ? lemmaRepository.findByLemmaIn(queryLemmas)
+                : lemmaRepository.findByLemmaInAndSite(queryLemmas, siteEntity);
 
-        if (totalPageCount == 0) {
-            return Collections.emptySet();
+        Map<String, Integer> frequencies = new HashMap<>();
+        List<Integer> lemmaIds = new ArrayList<>(lemmaEntities.size());
+        for (LemmaEntity lemmaEntity : lemmaEntities) {
+            frequencies.merge(lemmaEntity.getLemma(), lemmaEntity.getFrequency(), Integer::sum);
+            lemmaIds.add(lemmaEntity.getId());
         }
-        Set<String> filteredLemmaNames = new HashSet<>();
 
-        for (String lemmaName : queryLemmas) {
-            List<LemmaEntity> lemmaEntities = getLemmasByName(lemmaName);
-            if (!lemmaEntities.isEmpty()) {
-                int totalFrequency = lemmaEntities.stream()
-                        .mapToInt(LemmaEntity::getFrequency)
-                        .sum();
-                double percentage = ((double) totalFrequency / totalPageCount) * 100;
-                if (percentage <= THRESHOLD_PERCENTAGE) {
-                    filteredLemmaNames.add(lemmaName);
-                } else {
-                    log.info("Лемма '{}' превышает порог {}% ({}%). Удаляется из списка.",
-                            lemmaName, THRESHOLD_PERCENTAGE, String.format(Locale.US, "%.2f", percentage));
-                }
-            } else {
-                log.info("Для леммы '{}' не найдено соответствующих записей.", lemmaName);
-            }
+        // Лемма, которой нет в индексе, не встретится ни на одной странице
+        if (frequencies.size() < queryLemmas.size()) {
+            log.info("Для лемм запроса {} найдены записи только для {}", queryLemmas, frequencies.keySet());
+            return Collections.emptyList();
         }
-
-        return filteredLemmaNames;
-    }
-
-    private Set<PageEntity> getPagesMatchingAllLemmas(List<String> sortedLemmaNames, String query) {
-        Set<String> extractedLemmasNames = extractLemmas(query);
-
-        if (sortedLemmaNames.isEmpty() || extractedLemmasNames.isEmpty()) {
-            return Collections.emptySet();
+        if (!hasSelectiveLemma(frequencies, siteEntity)) {
+            return Collections.emptyList();
         }
 
-        String firstLemmaName = sortedLemmaNames.get(0);
-        List<LemmaEntity> firstLemmaEntities = getLemmasByName(firstLemmaName);
-
-        if (firstLemmaEntities.isEmpty()) {
-            return Collections.emptySet();
+        if (invertedIndex.isReady()) {
+            return invertedIndex.findRankedPages(groupLemmaIdsBySite(lemmaEntities, queryLemmas.size()));
         }
+        return indexRepository.findRankedPages(lemmaIds, queryLemmas.size());
+    }
 
-        Set<PageEntity> pages = new HashSet<>();
-        for (LemmaEntity lemmaEntity : firstLemmaEntities) {
-            pages.addAll(indexRepository.findPagesByLemma(lemmaEntity));
+    // id лемм запроса по сайтам; сайты, где встречаются не все леммы запроса, не подходят
+    private Collection<List<Integer>> groupLemmaIdsBySite(List<LemmaEntity> lemmaEntities, int lemmaCount) {
+        Map<Long, List<Integer>> bySite = new HashMap<>();
+        for (LemmaEntity lemmaEntity : lemmaEntities) {
+            bySite.computeIfAbsent(lemmaEntity.getSite().getId(), id -> new ArrayList<>()).add(lemmaEntity.getId());
         }
-
-        return pages.parallelStream()
-                .filter(page -> doesPageContainAllExtractedLemmas(page, extractedLemmasNames))
-                .collect(Collectors.toSet());
+        bySite.values().removeIf(ids -> ids.size() < lemmaCount);
+        return bySite.values();
     }
 
-    private boolean doesPageContainAllExtractedLemmas(PageEntity page, Set<String> extractedLemmasNames) {
-        for (String lemmaName : extractedLemmasNames) {
-            List<LemmaEntity> lemmas = getLemmasByName(lemmaName);
-
-            boolean pageContainsLemma = lemmas.stream()
-                    .anyMatch(lemma -> indexRepository.existsByPageAndLemma(page, lemma));
+    // Запрос только из слишком частых лемм (встречаются больше чем на THRESHOLD_PERCENTAGE% страниц) не выполняется
+    private boolean hasSelectiveLemma(Map<String, Integer> frequencies, SiteEntity siteEntity) {
+        long totalPageCount = siteEntity == null ? pageRepository.count() : pageRepository.countBySite(siteEntity);
+        if (totalPageCount == 0) {
+            return false;
+        }
 
-            if (!pageContainsLemma) {
-                return false;
+        boolean selective = false;
+        for (Map.Entry<String, Integer> entry : frequencies.entrySet()) {
+            double percentage = ((double) entry.getValue() / totalPageCount) * 100;
+            if (percentage <= THRESHOLD_PERCENTAGE) {
+                selective = true;
+            } else {
+                log.info("Лемма '{}' превышает порог {}% ({}%).",
+                        entry.getKey(), THRESHOLD_PERCENTAGE, String.format(Locale.US, "%.2f", percentage));
             }
         }
-        return true;
-    }
-
-    private List<LemmaEntity> getLemmasByName(String lemmaName) {
-        return lemmaRepository.findByLemma(lemmaName);
-    }
-
-    private List<String> getSortedLemmaNamesFromEntities(List<LemmaEntity> lemmaEntities) {
-        return lemmaEntities.stream()
-                .collect(Collectors.groupingBy(
-                        LemmaEntity::getLemma,
-                        Collectors.summingInt(LemmaEntity::getFrequency)
-                ))
-                .entrySet().stream()
-                .sorted(Map.Entry.comparingByValue())
-                .map(Map.Entry::getKey)
-                .collect(Collectors.toList());
+        return selective;
     }
 
     public Set<String> extractLemmas(String query) {
@@ -142,26 +101,4 @@ public class QueryUtil {
         }
         return lemmaCache.computeIfAbsent(query, lemmatizerUtil::extractLemmasFromQuery);
     }
-
-    private List<LemmaEntity> fetchLemmaEntities(Set<String> lemmas) {
-        return lemmaRepository.findByLemmaInOrderByFrequencyAsc(new ArrayList<>(lemmas));
-    }
-
-    private List<LemmaEntity> aggregateLemmaFrequencies(List<LemmaEntity> lemmaEntities) {
-        Map<String, Integer> frequencyMap = new HashMap<>();
-
-        for (LemmaEntity lemmaEntity : lemmaEntities) {
-            frequencyMap.merge(lemmaEntity.getLemma(), lemmaEntity.getFrequency(), Integer::sum);
-        }
-
-        return frequencyMap.entrySet().stream()
-                .map(entry -> {
-                    LemmaEntity aggregatedLemma = new LemmaEntity();
-                    aggregatedLemma.setLemma(entry.getKey());
-                    aggregatedLemma.setFrequency(entry.getValue());
-                    return aggregatedLemma;
-                })
-                .sorted(Comparator.comparingInt(LemmaEntity::getFrequency))
-                .collect(Collectors.toList());
-    }
-}
\ No newline at end of file
+}
@@ -3,6 +3,7 @@ package searchengine.utils;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
+import searchengine.dto.indexing.LemmaOccurrences;
 
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
@@ -15,11 +16,8 @@ public class SnippetGeneratorUtil {
     private static final int SNIPPET_WINDOW = 220;
     private final QueryUtil queryUtil;
     private final Map<String, List<Map.Entry<String, Set<String>>>> queryLemmasCache = new ConcurrentHashMap<>();
-    private Map<Integer, Set<String>> result;
-    private List<Set<String>> uniqueValuesList;
-    private ResultData resultData;
 
-    // Класс для хранения минимальной разницы и ключей
+    // Класс для хранения минимальной разницы и ключей. Создаётся на каждый вызов: бин общий для всех запросов
     static class ResultData {
         Integer finalUpperKey = null;
         Integer finalLowerKey = null;
@@ -34,10 +32,8 @@ public class SnippetGeneratorUtil {
         }
     }
 
-    public String generateSnippet(String content, String query) {
-        String cleanedText = lemmatizerUtil.cleanHtml(content);
-        cleanedText = cleanHtmlTags(cleanedText);
-
+    // Работает с видимым текстом, сохранённым при индексации: HTML здесь уже не разбирается
+    public String generateSnippet(String cleanedText, String query) {
         List<Map.Entry<String, Set<String>>> queryMap = getCachedQueryLemmas(query);
         List<Map.Entry<String, Set<String>>> wordLemmasList = getWordLemmasList(cleanedText);
         Map<Integer, Set<String>> intersectionMap = getIntersectionMap(queryMap, wordLemmasList);
@@ -58,6 +54,224 @@ public class SnippetGeneratorUtil {
         return highlightKeywords(formattedSnippet, query);
     }
 
+    // Сниппет по позициям из индекса: ищется самое короткое окно, где встречаются все слова запроса,
+    // и текст вокруг него. Работа пропорциональна числу вхождений, страница заново не лемматизируется.
+    // Без позиций (строки индекса, записанные до их появления) используется разбор всего текста
+    public String generateSnippet(String text, String query, Map<String, LemmaOccurrences> occurrences) {
+        if (occurrences == null || occurrences.isEmpty()) {
+            return generateSnippet(text, query);
+        }
+
+        List<Set<String>> terms = getQueryTerms(query);
+        if (terms.isEmpty() || terms.size() > Integer.SIZE - 1) {
+            return generateSnippet(text, query);
+        }
+
+        int[][] matches = collectMatches(terms, occurrences);
+        int fullMask = (1 << terms.size()) - 1;
+        int coveredMask = 0;
+        for (int[] match : matches) {
+            coveredMask |= match[2];
+        }
+        // Позиции не соответствуют тексту (страница сохранена до их появления) — разбираем текст целиком
+        if (coveredMask != fullMask || matches[matches.length - 1][1] >= text.length()) {
+            return generateSnippet(text, query);
+        }
+
+        int[] window = findShortestWindow(matches, terms.size(), text);
+        int spanStart = matches[window[0]][1];
+        int spanEnd = matchEnd(text, matches[window[1]][1]);
+        if (spanEnd - spanStart > SNIPPET_WINDOW) {
+            // Все слова запроса в сниппет не помещаются, но страница им соответствует — показываем лучший фрагмент
+            int anchor = findAnchor(matches, terms.size());
+            return buildSnippetAroundSpan(text, anchor, matchEnd(text, anchor), matches);
+        }
+
+        return buildSnippetAroundSpan(text, spanStart, spanEnd, matches);
+    }
+
+    // Смещение вхождения самого редкого слова запроса, рядом с которым (в пределах SNIPPET_WINDOW)
+    // встречается больше всего других слов запроса
+    private int findAnchor(int[][] matches, int termCount) {
+        int[] termHits = new int[termCount];
+        for (int[] match : matches) {
+            addHits(termHits, match[2], 1);
+        }
+        int rarest = 0;
+        for (int t = 1; t < termCount; t++) {
+            if (termHits[t] < termHits[rarest]) {
+                rarest = t;
+            }
+        }
+
+        int half = SNIPPET_WINDOW / 2;
+        int bestOffset = -1;
+        int bestCovered = -1;
+        for (int i = 0; i < matches.length; i++) {
+            if ((matches[i][2] & (1 << rarest)) == 0) {
+                continue;
+            }
+            int offset = matches[i][1];
+            int mask = matches[i][2];
+            for (int j = i - 1; j >= 0 && offset - matches[j][1] <= half; j--) {
+                mask |= matches[j][2];
+            }
+            for (int j = i + 1; j < matches.length && matches[j][1] - offset <= half; j++) {
+                mask |= matches[j][2];
+            }
+            int covered = Integer.bitCount(mask);
+            if (covered > bestCovered) {
+                bestCovered = covered;
+                bestOffset = offset;
+            }
+        }
+        return bestOffset;
+    }
+
+    // Наборы лемм для каждого слова запроса; слово считается найденным, если встретилась любая его лемма
+    private List<Set<String>> getQueryTerms(String query) {
+        List<Set<String>> terms = new ArrayList<>();
+        for (Map.Entry<String, Set<String>> entry : getCachedQueryLemmas(query)) {
+            if (!entry.getValue().isEmpty() && !terms.contains(entry.getValue())) {
+                terms.add(entry.getValue());
+            }
+        }
+        return terms;
+    }
+
+    // Вхождения всех лемм запроса по порядку слов: {номер слова, смещение, маска слов запроса}
+    private int[][] collectMatches(List<Set<String>> terms, Map<String, LemmaOccurrences> occurrences) {
+        Map<Integer, int[]> byPosition = new TreeMap<>();
+        for (Map.Entry<String, LemmaOccurrences> entry : occurrences.entrySet()) {
+            int mask = 0;
+            for (int t = 0; t < terms.size(); t++) {
+                if (terms.get(t).contains(entry.getKey())) {
+                    mask |= 1 << t;
+                }
+            }
+            if (mask == 0) {
+                continue;
+            }
+            LemmaOccurrences lemma = entry.getValue();
+            for (int i = 0; i < lemma.count(); i++) {
+                int finalMask = mask;
+                int offset = lemma.offsetAt(i);
+                byPosition.merge(lemma.positionAt(i), new int[]{lemma.positionAt(i), offset, mask},
+                        (existing, added) -> {
+                            existing[2] |= finalMask;
+                            return existing;
+                        });
+            }
+        }
+        return byPosition.values().toArray(new int[0][]);
+    }
+
+    // Два указателя по вхождениям: самое короткое по символам окно, покрывающее все слова запроса
+    private int[] findShortestWindow(int[][] matches, int termCount, String text) {
+        int[] termHits = new int[termCount];
+        int covered = 0;
+        int[] best = {0, matches.length - 1};
+        int bestLength = Integer.MAX_VALUE;
+        int left = 0;
+
+        for (int right = 0; right < matches.length; right++) {
+            covered += addHits(termHits, matches[right][2], 1);
+            while (covered == termCount) {
+                int length = matchEnd(text, matches[right][1]) - matches[left][1];
+                if (length < bestLength) {
+                    bestLength = length;
+                    best = new int[]{left, right};
+                }
+                covered -= addHits(termHits, matches[left][2], -1);
+                left++;
+            }
+        }
+        return best;
+    }
+
+    // Меняет счётчики слов запроса из маски; возвращает, сколько слов стало покрыто или перестало быть покрытым
+    private int addHits(int[] termHits, int mask, int delta) {
+        int changed = 0;
+        for (int t = 0; t < termHits.length; t++) {
+            if ((mask & (1 << t)) == 0) {
+                continue;
+            }
+            termHits[t] += delta;
+            if ((delta > 0 && termHits[t] == 1) || (delta < 0 && termHits[t] == 0)) {
+                changed++;
+            }
+        }
+        return changed;
+    }
+
+    private String buildSnippetAroundSpan(String text, int spanStart, int spanEnd, int[][] matches) {
+        // Окно расширяется в обе стороны до SNIPPET_WINDOW символов и выравнивается по границам слов
+        int spare = SNIPPET_WINDOW - (spanEnd - spanStart);
+        int start = Math.max(0, spanStart - spare / 2);
+        int end = Math.min(text.length(), spanEnd + spare - (spanStart - start));
+        start = Math.max(0, start - (spare - (spanStart - start) - (end - spanEnd)));
+        while (start > 0 && !Character.isWhitespace(text.charAt(start - 1))) {
+            start--;
+        }
+        end = wordEnd(text, end);
+        start = skipToSentenceStart(text, start, end, spanStart);
+
+        StringBuilder snippet = new StringBuilder();
+        if (start > 0) {
+            snippet.append("... ");
+        }
+        int cursor = start;
+        for (int[] match : matches) {
+            int offset = match[1];
+            if (offset < Math.max(start, cursor) || offset >= end) {
+                continue;
+            }
+            int highlightEnd = matchEnd(text, offset);
+            snippet.append(text, cursor, offset).append("<b>").append(text, offset, highlightEnd).append("</b>");
+            cursor = highlightEnd;
+        }
+        snippet.append(text, cursor, end);
+        if (end < text.length()) {
+            snippet.append(" ...");
+        }
+        return snippet.toString().trim();
+    }
+
+    // Как formattedSnippet: начало обрывка предложения отбрасывается, если это не больше четверти сниппета
+    private int skipToSentenceStart(String text, int start, int end, int firstMatch) {
+        if (start == 0 || start >= end || Character.isUpperCase(text.charAt(start))) {
+            return start;
+        }
+        int limit = Math.min(firstMatch, start + (end - start) / 4);
+        for (int i = start; i < limit; i++) {
+            char c = text.charAt(i);
+            boolean wordEnds = i + 1 == text.length() || Character.isWhitespace(text.charAt(i + 1));
+            if (wordEnds && (c == '.' || c == '?' || c == '!' || c == ';')) {
+                int next = i + 1;
+                while (next < end && Character.isWhitespace(text.charAt(next))) {
+                    next++;
+                }
+                return next;
+            }
+        }
+        return start;
+    }
+
+    // Конец найденного слова по правилам разбора при индексации; знаки вокруг слова не выделяются
+    private int matchEnd(String text, int offset) {
+        int end = WordTokenizer.tokenEnd(text, offset);
+        return end > offset ? end : wordEnd(text, offset);
+    }
+
+    // Конец последовательности символов без пробелов, начинающейся в offset
+    private int wordEnd(String text, int offset) {
+        int end = offset;
+        while (end < text.length() && !Character.isWhitespace(text.charAt(end))) {
+            end++;
+        }
+        return end;
+    }
+
     private String formattedSnippet(String snippet) {
         String trimmedSnippet = snippet.trim();
         boolean startsWithEllipsis = trimmedSnippet.startsWith("...");
@@ -119,10 +333,6 @@ public class SnippetGeneratorUtil {
         return extractedLemmas.containsAll(queryLemmas);
     }
 
-    private String cleanHtmlTags(String input) {
-        return input.replaceAll("<[^>]*>", "");
-    }
-
     // Метод для получения списка исходных слов и их уникальных лемм с сохранением порядка
     private List<Map.Entry<String, Set<String>>> getWordLemmasList(String text) {
         String[] words = text.split("\\s+");
@@ -204,14 +414,14 @@ public class SnippetGeneratorUtil {
 
     public Map<Integer, Set<String>> rebuildResultMap(Map<Integer, Set<String>> inputResult, Map<Integer,
             Set<String>> resultMap) {
-        this.result = inputResult;
-        this.uniqueValuesList = new ArrayList<>(new LinkedHashSet<>(result.values()));
-        this.resultData = new ResultData();
+        TreeMap<Integer, Set<String>> result = new TreeMap<>(inputResult);
+        int uniqueValuesCount = new HashSet<>(result.values()).size();
+        ResultData resultData = new ResultData();
 
         Map<Integer, Set<String>> rebuiltMap = new LinkedHashMap<>();
 
-        if (uniqueValuesList.size() == 1) {
-            Integer singleKey = result.keySet().iterator().next();
+        if (uniqueValuesCount == 1) {
+            Integer singleKey = inputResult.keySet().iterator().next();
             rebuiltMap.put(singleKey, result.get(singleKey));
             return rebuiltMap;
         }
@@ -222,8 +432,8 @@ public class SnippetGeneratorUtil {
         List<Integer> sortedKeysAscending = new ArrayList<>(resultMap.keySet());
         sortedKeysAscending.sort(Comparator.naturalOrder());
 
-        processDescending(sortedKeysDescending);
-        processAscending(sortedKeysAscending);
+        processKeys(result, uniqueValuesCount, resultData, sortedKeysDescending, false);
+        processKeys(result, uniqueValuesCount, resultData, sortedKeysAscending, true);
 
         if (resultData.finalUpperKey != null && resultData.finalLowerKey != null) {
             rebuiltMap.put(resultData.finalUpperKey, result.get(resultData.finalUpperKey));
@@ -233,7 +443,8 @@ public class SnippetGeneratorUtil {
         return rebuiltMap;
     }
 
-    private void processKeys(List<Integer> sortedKeys, boolean ascending) {
+    private void processKeys(TreeMap<Integer, Set<String>> result, int uniqueValuesCount, ResultData resultData,
+                             List<Integer> sortedKeys, boolean ascending) {
         for (Integer startKey : sortedKeys) {
             Integer currentKey = startKey;
             Integer boundaryKey = null;
@@ -243,13 +454,13 @@ public class SnippetGeneratorUtil {
                 currentUniqueValues.add(result.get(currentKey));
             }
 
-            while ((currentKey = getNextKey(currentKey, ascending)) != null) {
+            while ((currentKey = ascending ? result.higherKey(currentKey) : result.lowerKey(currentKey)) != null) {
                 Set<String> currentValue = result.get(currentKey);
                 if (currentValue != null && currentUniqueValues.add(currentValue)) {
                     boundaryKey = currentKey;
                 }
 
-                if (currentUniqueValues.size() == uniqueValuesList.size()) {
+                if (currentUniqueValues.size() == uniqueValuesCount) {
                     if (boundaryKey != null) {
                         // Рассчитываем границы диапазона
                         int lowerKey = ascending ? startKey : boundaryKey;
@@ -264,19 +475,6 @@ public class SnippetGeneratorUtil {
         }
     }
 
-    private Integer getNextKey(Integer currentKey, boolean ascending) {
-        TreeMap<Integer, Set<String>> treeMap = new TreeMap<>(result);
-        return ascending ? treeMap.higherKey(currentKey) : treeMap.lowerKey(currentKey);
-    }
-
-    private void processDescending(List<Integer> sortedKeysDescending) {
-        processKeys(sortedKeysDescending, false);
-    }
-
-    private void processAscending(List<Integer> sortedKeysAscending) {
-        processKeys(sortedKeysAscending, true);
-    }
-
     // Карта которая хранит min значение со всеми индексами
     private Map<Integer, Set<String>> countMinSize(Set<String> minCount, Map<Integer, Set<String>> inputMap) {
         Map<Integer, Set<String>> resultMap = new HashMap<>();
@@ -0,0 +1,114 @@
+package searchengine.utils;
+
+import java.util.Arrays;
+
+// Разбор текста на слова за один проход без регулярных выражений и промежуточных копий текста.
+// Слово — непрерывная последовательность букв одного алфавита, русского или латинского; буквы сразу
+// приводятся к нижнему регистру, «ё» — к «е», как в словаре морфологии. Смена алфавита, дефис и любые
+// другие знаки разделяют слова, поэтому части «северо-запад» разбираются отдельно.
+// Мягкий перенос и знак ударения внутри слова пропускаются.
+public final class WordTokenizer {
+    private static final int INITIAL_BUFFER = 32;
+    private static final char SOFT_HYPHEN = '\u00AD';
+    private static final char COMBINING_ACUTE = '\u0301';
+
+    // Алфавит слова: по нему выбирается морфология
+    public enum Script {
+        CYRILLIC,
+        LATIN
+    }
+
+    // Получает слово, его алфавит, порядковый номер среди слов текста и смещение первой буквы
+    @FunctionalInterface
+    public interface TokenSink {
+        void accept(String word, Script script, int position, int offset);
+    }
+
+    private WordTokenizer() {
+    }
+
+    public static void tokenize(CharSequence text, TokenSink sink) {
+        char[] buffer = new char[INITIAL_BUFFER];
+        int length = text.length();
+        int position = 0;
+        int i = 0;
+
+        while (i < length) {
+            char c = text.charAt(i);
+            Script script;
+            if (foldCyrillic(c) != 0) {
+                script = Script.CYRILLIC;
+            } else if (foldLatin(c) != 0) {
+                script = Script.LATIN;
+            } else {
+                i++;
+                continue;
+            }
+
+            int start = i;
+            int size = 0;
+            for (; i < length; i++) {
+                c = text.charAt(i);
+                if (c == SOFT_HYPHEN || c == COMBINING_ACUTE) {
+                    continue;
+                }
+                char letter = fold(c, script);
+                if (letter == 0) {
+                    break;
+                }
+                if (size == buffer.length) {
+                    buffer = Arrays.copyOf(buffer, size * 2);
+                }
+                buffer[size++] = letter;
+            }
+            sink.accept(new String(buffer, 0, size), script, position++, start);
+        }
+    }
+
+    // Конец слова, начинающегося в offset, по тем же правилам, что и при разборе
+    public static int tokenEnd(CharSequence text, int offset) {
+        if (offset >= text.length()) {
+            return offset;
+        }
+        char first = text.charAt(offset);
+        Script script = foldCyrillic(first) != 0 ? Script.CYRILLIC : Script.LATIN;
+        int end = offset;
+        while (end < text.length()) {
+            char c = text.charAt(end);
+            if (fold(c, script) == 0 && c != SOFT_HYPHEN && c != COMBINING_ACUTE) {
+                break;
+            }
+            end++;
+        }
+        return end;
+    }
+
+    private static char fold(char c, Script script) {
+        return script == Script.CYRILLIC ? foldCyrillic(c) : foldLatin(c);
+    }
+
+    // Строчная русская буква для символа текста или 0, если символ не русская буква
+    static char foldCyrillic(char c) {
+        if (c >= 'а' && c <= 'я') {
+            return c;
+        }
+        if (c >= 'А' && c <= 'Я') {
+            return (char) (c + ('а' - 'А'));
+        }
+        if (c == 'ё' || c == 'Ё') {
+            return 'е';
+        }
+        return 0;
+    }
+
+    // Строчная латинская буква для символа текста или 0, если символ не латинская буква
+    static char foldLatin(char c) {
+        if (c >= 'a' && c <= 'z') {
+            return c;
+        }
+        if (c >= 'A' && c <= 'Z') {
+            return (char) (c + ('a' - 'A'));
+        }
+        return 0;
+    }
+}
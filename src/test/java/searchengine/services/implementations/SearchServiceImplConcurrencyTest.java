@@ -0,0 +1,205 @@
+package searchengine.services.implementations;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import searchengine.dto.search.RankedPage;
+import searchengine.dto.search.SearchResponse;
+import searchengine.dto.search.SearchResult;
+import searchengine.model.PageEntity;
+import searchengine.model.SiteEntity;
+import searchengine.repository.IndexRepository;
+import searchengine.repository.PageRepository;
+import searchengine.repository.SiteRepository;
+import searchengine.services.crud.PageContentStore;
+import searchengine.services.crud.SnippetCache;
+import searchengine.utils.QueryUtil;
+import searchengine.utils.SnippetGeneratorUtil;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+// Параллельные search() с разными запросами и сайтами над одним экземпляром сервиса:
+// каждый ответ должен содержать только страницы своего сайта и своего запроса, а пропускная способность
+// должна расти с числом потоков. Моки stubOnly не запоминают вызовы — иначе они сами стали бы общей блокировкой
+class SearchServiceImplConcurrencyTest {
+
+    private static final List<String> SITES = List.of("https://a.example", "https://b.example", "https://c.example");
+    private static final List<String> WORDS = List.of("лес", "река", "гора", "поле");
+    private static final int PAGES_PER_QUERY = 25;
+    private static final int THREADS = 8;
+    private static final int SEARCHES_PER_THREAD = 200;
+    private static final int SCALING_SEARCHES_PER_THREAD = 5_000;
+
+    private final Map<String, SiteEntity> sites = new HashMap<>();
+    private final Map<Integer, PageEntity> pages = new HashMap<>();
+    // Ключ — слово и url сайта; для поиска по всем сайтам url равен null
+    private final Map<List<String>, List<RankedPage>> rankedPages = new HashMap<>();
+
+    private SearchServiceImpl searchService;
+
+    @BeforeEach
+    void setUp() {
+        seed();
+
+        SiteRepository siteRepository = mock(SiteRepository.class, withSettings().stubOnly());
+        IndexRepository indexRepository = mock(IndexRepository.class, withSettings().stubOnly());
+        PageRepository pageRepository = mock(PageRepository.class, withSettings().stubOnly());
+        SnippetGeneratorUtil snippetGeneratorUtil = mock(SnippetGeneratorUtil.class, withSettings().stubOnly());
+        QueryUtil queryUtil = mock(QueryUtil.class, withSettings().stubOnly());
+        PageContentStore pageContentStore = mock(PageContentStore.class, withSettings().stubOnly());
+
+        when(queryUtil.extractLemmas(anyString()))
+                .thenAnswer(invocation -> Set.of((String) invocation.getArgument(0)));
+        when(siteRepository.findByUrl(any()))
+                .thenAnswer(invocation -> Optional.ofNullable(sites.get((String) invocation.getArgument(0))));
+        when(queryUtil.findRankedPages(anySet(), any())).thenAnswer(invocation -> {
+            Set<String> lemmas = invocation.getArgument(0);
+            SiteEntity site = invocation.getArgument(1);
+            String word = lemmas.iterator().next();
+            // Копия: сервис не должен зависеть от того, что список общий для запросов
+            return new ArrayList<>(rankedPages.get(Arrays.asList(word, site == null ? null : site.getUrl())));
+        });
+        when(pageRepository.findAllById(anyIterable())).thenAnswer(invocation -> {
+            Iterable<Integer> ids = invocation.getArgument(0);
+            List<PageEntity> found = new ArrayList<>();
+            for (Integer id : ids) {
+                found.add(pages.get(id));
+            }
+            return found;
+        });
+        when(indexRepository.findPositionsByPageAndLemmaIn(any(), anyCollection())).thenReturn(List.of());
+        when(pageContentStore.loadText(any()))
+                .thenAnswer(invocation -> "text of " + ((PageEntity) invocation.getArgument(0)).getPath());
+        when(snippetGeneratorUtil.generateSnippet(anyString(), anyString(), any()))
+                .thenAnswer(invocation -> invocation.getArgument(0) + " <b>" + invocation.getArgument(1) + "</b>");
+
+        searchService = new SearchServiceImpl(siteRepository, indexRepository, pageRepository,
+                snippetGeneratorUtil, queryUtil, pageContentStore, new SnippetCache());
+        ReflectionTestUtils.setField(searchService, "limit", 20);
+        ReflectionTestUtils.setField(searchService, "maxLimit", 100);
+    }
+
+    // Каждое слово встречается на своих страницах каждого сайта; путь страницы содержит слово
+    private void seed() {
+        int pageId = 1;
+        long siteId = 1;
+        for (String url : SITES) {
+            SiteEntity site = SiteEntity.builder().id(siteId++).url(url).name(url).build();
+            sites.put(url, site);
+        }
+        for (String word : WORDS) {
+            List<RankedPage> allSites = new ArrayList<>();
+            for (String url : SITES) {
+                List<RankedPage> ranked = new ArrayList<>();
+                for (int i = 0; i < PAGES_PER_QUERY; i++) {
+                    PageEntity page = new PageEntity();
+                    page.setId(pageId++);
+                    page.setSite(sites.get(url));
+                    page.setPath("/" + word + "/" + i);
+                    page.setCode(200);
+                    page.setTitle(word + " " + i);
+                    pages.put(page.getId(), page);
+                    ranked.add(new RankedPage(page.getId(), page.getPath(), (double) (PAGES_PER_QUERY - i)));
+                }
+                rankedPages.put(Arrays.asList(word, url), ranked);
+                allSites.addAll(ranked);
+            }
+            rankedPages.put(Arrays.asList(word, null), allSites);
+        }
+    }
+
+    @Test
+    void concurrentSearchesDoNotShareResults() throws Exception {
+        runSearches(THREADS, SEARCHES_PER_THREAD);
+    }
+
+    // Один и тот же объём поиска на поток в одном потоке и в нескольких: у сервиса нет общих блокировок,
+    // поэтому число запросов в секунду должно расти почти пропорционально числу ядер. Порог — половина
+    // идеального роста, чтобы тест не зависел от шума на общей машине
+    @Test
+    void throughputScalesWithThreads() throws Exception {
+        int cores = Runtime.getRuntime().availableProcessors();
+        assumeTrue(cores >= 2, "нужно не меньше двух ядер");
+        int threads = Math.min(THREADS, cores);
+
+        // Прогрев JIT
+        runSearches(threads, SEARCHES_PER_THREAD);
+
+        double single = throughput(1, SCALING_SEARCHES_PER_THREAD);
+        double parallel = throughput(threads, SCALING_SEARCHES_PER_THREAD);
+        double speedup = parallel / single;
+        System.out.printf("Поиск: 1 поток — %.0f запросов/с, %d потоков — %.0f запросов/с, ускорение %.2f%n",
+                single, threads, parallel, speedup);
+        assertTrue(speedup >= threads * 0.5,
+                String.format("ускорение %.2f на %d потоках меньше половины идеального", speedup, threads));
+    }
+
+    private double throughput(int threads, int searchesPerThread) throws Exception {
+        long elapsed = runSearches(threads, searchesPerThread);
+        return threads * searchesPerThread * 1e9 / elapsed;
+    }
+
+    // Запускает потоки одновременно и возвращает время, за которое все они выполнили свои запросы, в наносекундах
+    private long runSearches(int threads, int searchesPerThread) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch ready = new CountDownLatch(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Integer>> futures = new ArrayList<>();
+        try {
+            for (int t = 0; t < threads; t++) {
+                int seed = t;
+                futures.add(executor.submit(() -> {
+                    Random random = new Random(seed);
+                    ready.countDown();
+                    start.await();
+                    for (int i = 0; i < searchesPerThread; i++) {
+                        String word = WORDS.get(random.nextInt(WORDS.size()));
+                        // Каждый четвёртый запрос — по всем сайтам
+                        String site = random.nextInt(4) == 0 ? null : SITES.get(random.nextInt(SITES.size()));
+                        int limit = 1 + random.nextInt(10);
+                        int offset = random.nextInt(PAGES_PER_QUERY);
+                        assertOwnResults(word, site, offset, limit, searchService.search(word, site, offset, limit));
+                    }
+                    return searchesPerThread;
+                }));
+            }
+            ready.await();
+            long begin = System.nanoTime();
+            start.countDown();
+
+            int completed = 0;
+            for (Future<Integer> future : futures) {
+                completed += future.get(1, TimeUnit.MINUTES);
+            }
+            long elapsed = System.nanoTime() - begin;
+            assertEquals(threads * searchesPerThread, completed);
+            return elapsed;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void assertOwnResults(String word, String site, int offset, int limit, SearchResponse response) {
+        int total = site == null ? PAGES_PER_QUERY * SITES.size() : PAGES_PER_QUERY;
+        assertTrue(response.isResult());
+        assertEquals(total, response.getCount());
+        assertEquals(Math.min(limit, Math.max(total - offset, 0)), response.getData().size());
+
+        for (SearchResult result : response.getData()) {
+            if (site != null) {
+                assertEquals(site, result.getSite(), "result from another site");
+            }
+            assertTrue(result.getUri().startsWith("/" + word + "/"), "page of another query: " + result.getUri());
+            assertTrue(result.getSnippet().contains("text of " + result.getUri() + " <b>" + word + "</b>"),
+                    "snippet of another request: " + result.getSnippet());
+        }
+    }
+}
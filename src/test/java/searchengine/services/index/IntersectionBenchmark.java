@@ -0,0 +1,113 @@
+package searchengine.services.index;
+
+import searchengine.dto.search.RankedPage;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+// Сравнение пересечения списков страниц для запросов из нескольких слов: прежний вариант
+// (каждая страница самого короткого списка ищется в остальных двоичным поиском) и InvertedIndex.intersect
+// (галопирование от предыдущей находки и плотные массивы рангов). Данные строятся с фиксированным зерном,
+// результаты обоих вариантов сверяются. Запуск:
+//   mvn -q test-compile exec:java -Dexec.classpathScope=test \
+//       -Dexec.mainClass=searchengine.services.index.IntersectionBenchmark
+public class IntersectionBenchmark {
+    private static final int PAGES = 500_000;
+    private static final int WARMUP_ROUNDS = 200;
+    private static final int MEASURED_ROUNDS = 1_000;
+
+    public static void main(String[] args) {
+        Random random = new Random(42);
+        run("редкое + частое слово", random, 1_000, 200_000);
+        run("три слова средней частоты", random, 20_000, 50_000, 100_000);
+        run("два плотных слова", random, 300_000, 400_000);
+        run("пять слов, пустое пересечение", random, 500, 5_000, 50_000, 100_000, 200_000);
+    }
+
+    private static void run(String name, Random random, int... sizes) {
+        List<PostingList.Snapshot> lists = new ArrayList<>();
+        for (int size : sizes) {
+            lists.add(randomList(random, size).snapshot());
+        }
+
+        List<RankedPage> expected = new ArrayList<>();
+        binarySearchIntersect(new ArrayList<>(lists), expected);
+        List<RankedPage> actual = new ArrayList<>();
+        InvertedIndex.intersect(new ArrayList<>(lists), actual);
+        verify(name, expected, actual);
+
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            binarySearchIntersect(new ArrayList<>(lists), new ArrayList<>());
+            InvertedIndex.intersect(new ArrayList<>(lists), new ArrayList<>());
+        }
+        // После прогрева у плотных списков уже построены массивы рангов — сверяем и этот путь
+        List<RankedPage> dense = new ArrayList<>();
+        InvertedIndex.intersect(new ArrayList<>(lists), dense);
+        verify(name, expected, dense);
+        long previous = median(() -> binarySearchIntersect(new ArrayList<>(lists), new ArrayList<>()));
+        long current = median(() -> InvertedIndex.intersect(new ArrayList<>(lists), new ArrayList<>()));
+        System.out.printf("%-32s списки %-36s найдено %7d  двоичный поиск %8d мкс  intersect %8d мкс  x%.1f%n",
+                name, Arrays.toString(sizes), actual.size(), previous / 1_000, current / 1_000,
+                (double) previous / Math.max(1, current));
+    }
+
+    // Прежняя реализация InvertedIndex.intersect
+    private static void binarySearchIntersect(List<PostingList.Snapshot> lists, List<RankedPage> result) {
+        lists.sort(Comparator.comparingInt(snapshot -> snapshot.size));
+        PostingList.Snapshot shortest = lists.get(0);
+        for (int i = 0; i < shortest.size; i++) {
+            int pageId = shortest.pageIds[i];
+            double relevance = shortest.ranks[i];
+            boolean matches = true;
+            for (int l = 1; l < lists.size() && matches; l++) {
+                PostingList.Snapshot other = lists.get(l);
+                int index = Arrays.binarySearch(other.pageIds, 0, other.size, pageId);
+                if (index < 0) {
+                    matches = false;
+                } else {
+                    relevance += other.ranks[index];
+                }
+            }
+            if (matches) {
+                result.add(new RankedPage(pageId, null, relevance));
+            }
+        }
+    }
+
+    private static PostingList randomList(Random random, int size) {
+        int[] pageIds = random.ints(0, PAGES).distinct().limit(size).sorted().toArray();
+        float[] ranks = new float[pageIds.length];
+        for (int i = 0; i < ranks.length; i++) {
+            ranks[i] = 1 + random.nextInt(20);
+        }
+        return new PostingList(pageIds, ranks);
+    }
+
+    private static long median(Runnable intersection) {
+        long[] times = new long[MEASURED_ROUNDS];
+        for (int i = 0; i < MEASURED_ROUNDS; i++) {
+            long start = System.nanoTime();
+            intersection.run();
+            times[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(times);
+        return times[MEASURED_ROUNDS / 2];
+    }
+
+    private static void verify(String name, List<RankedPage> expected, List<RankedPage> actual) {
+        Comparator<RankedPage> byPage = Comparator.comparing(RankedPage::getPageId);
+        expected.sort(byPage);
+        actual.sort(byPage);
+        boolean same = expected.size() == actual.size();
+        for (int i = 0; same && i < expected.size(); i++) {
+            same = expected.get(i).getPageId().equals(actual.get(i).getPageId())
+                    && Math.abs(expected.get(i).getRelevance() - actual.get(i).getRelevance()) < 1e-6;
+        }
+        if (!same) {
+            throw new IllegalStateException("Результаты пересечения расходятся: " + name);
+        }
+    }
+}